@@ -1,19 +1,32 @@
 package cn.yyzmain.h2.controller;
 
 import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.entity.StudentBatchResult;
+import cn.yyzmain.h2.entity.StudentPage;
 import cn.yyzmain.h2.mapper.StudentMapper;
+import cn.yyzmain.h2.service.StudentBatchService;
+import cn.yyzmain.h2.service.StudentCache;
+import cn.yyzmain.h2.service.StudentExportService;
 import cn.yyzmain.result.MainResult;
 import cn.yyzmain.result.MainResultGenerator;
+import cn.yyzmain.result.ResultCode;
 import com.google.gson.Gson;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 
 @RestController
@@ -23,8 +36,24 @@ import java.util.List;
 @RequiredArgsConstructor
 public class StudentController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final StudentMapper studentMapper;
 
+    private final StudentExportService studentExportService;
+
+    private final StudentBatchService studentBatchService;
+
+    private final StudentCache studentCache;
+
+    /**
+     * 批量添加单次最多条数
+     */
+    @Value("${app.h2.batch.max-rows:10000}")
+    private int maxBatchRows;
+
     @ApiOperation("列表")
     @PostMapping("/list")
     public MainResult<String> list() {
@@ -32,12 +61,69 @@ public class StudentController {
         return MainResultGenerator.createOkResult(new Gson().toJson(students));
     }
 
+    @ApiOperation("按ID查询")
+    @PostMapping("/get")
+    public MainResult<Student> get(Integer studentId) {
+        if (studentId == null) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        final Student student = studentCache.get(studentId);
+        if (student == null) {
+            return MainResultGenerator.createFailResult("student不存在: " + studentId);
+        }
+        return MainResultGenerator.createOkResult(student);
+    }
+
+    /**
+     * @param afterId 上一页返回的nextAfterId，第一页不传
+     * @param limit   每页条数，默认100，最大1000
+     */
+    @ApiOperation("分页列表（按student_id游标）")
+    @PostMapping("/page")
+    public MainResult<StudentPage> page(Integer afterId, Integer limit) {
+        final int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        final List<Student> students = studentCache.page(afterId == null ? Integer.MIN_VALUE : afterId, size);
+        final Integer nextAfterId = students.size() < size ? null : students.get(students.size() - 1).getStudentId();
+        return MainResultGenerator.createOkResult(new StudentPage().setStudents(students).setNextAfterId(nextAfterId));
+    }
+
+    @ApiOperation("流式导出全部（JSON数组）")
+    @PostMapping("/export")
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        final int rows = studentExportService.export(response.getWriter());
+        log.info("==>>>student导出{}条", rows);
+    }
+
     @ApiOperation("添加")
     @PostMapping("/add")
     public MainResult<String> add(@RequestBody Student student) {
-        final int insert = studentMapper.insert(student);
-        final List<Student> students = studentMapper.selectAll();
-        return MainResultGenerator.createOkResult(new Gson().toJson(students));
+        studentMapper.insert(student);
+        studentCache.evict(Collections.singletonList(student.getStudentId()));
+        return MainResultGenerator.createOkResult(new Gson().toJson(student));
+    }
+
+    @ApiOperation("批量添加（已存在的studentId不写入，按行返回）")
+    @PostMapping("/batchAdd")
+    public MainResult<StudentBatchResult> batchAdd(@RequestBody List<Student> students) {
+        if (students == null || students.isEmpty() || students.size() > maxBatchRows) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        final StudentBatchResult result;
+        try {
+            result = studentBatchService.addBatch(students);
+        } catch (DataAccessException e) {
+            // 写库失败整批已回滚，没有行被写入
+            log.error("==>>>student批量添加失败，整批回滚,total:{}", students.size(), e);
+            return MainResultGenerator.createFailResult("写入失败，整批未写入: " + e.getMostSpecificCause().getMessage());
+        }
+        log.info("==>>>student批量添加,total:{}, inserted:{}, errors:{}, cost:{}ms", students.size(),
+                result.getInsertedIds().size(), result.getErrors().size(), result.getCostMs());
+        return MainResultGenerator.createOkResult(result);
     }
 
 }
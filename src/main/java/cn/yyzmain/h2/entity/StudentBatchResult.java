@@ -0,0 +1,42 @@
+package cn.yyzmain.h2.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量添加结果
+ */
+@Data
+@Accessors(chain = true)
+public class StudentBatchResult {
+
+    /**
+     * 新插入的studentId
+     */
+    private List<Integer> insertedIds = new ArrayList<>();
+    /**
+     * 未写入的行：校验未通过或studentId已存在，按下标排序
+     */
+    private List<RowError> errors = new ArrayList<>();
+    /**
+     * 耗时：ms
+     */
+    private long costMs;
+
+    @Data
+    @Accessors(chain = true)
+    public static class RowError {
+
+        /**
+         * 在请求体中的下标
+         */
+        private int index;
+
+        private Integer studentId;
+
+        private String error;
+    }
+}
@@ -0,0 +1,21 @@
+package cn.yyzmain.h2.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 按student_id游标分页的一页
+ */
+@Data
+@Accessors(chain = true)
+public class StudentPage {
+
+    private List<Student> students;
+
+    /**
+     * 下一页请求的afterId，没有更多数据时为null
+     */
+    private Integer nextAfterId;
+}
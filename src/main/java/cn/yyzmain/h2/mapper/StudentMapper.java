@@ -2,8 +2,50 @@ package cn.yyzmain.h2.mapper;
 
 
 import cn.yyzmain.h2.entity.Student;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 import tk.mybatis.mapper.common.Mapper;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface StudentMapper extends Mapper<Student> {
 
+    /**
+     * 按主键插入或更新（H2 MERGE），重复消费同一条消息结果不变
+     */
+    @Insert("MERGE INTO student (student_id, student_name, gender, age) KEY (student_id) "
+            + "VALUES (#{studentId}, #{studentName}, #{gender}, #{age})")
+    int merge(Student student);
+
+    @Select("SELECT student_id, student_name, gender, age FROM student WHERE student_id = #{studentId}")
+    Student selectById(@Param("studentId") int studentId);
+
+    /**
+     * 给定ID中已存在的
+     */
+    @Select({"<script>",
+            "SELECT student_id FROM student WHERE student_id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    List<Integer> selectExistingIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * 按主键游标分页：取 student_id 大于 afterId 的前 limit 条，走主键索引，与页码深度无关
+     */
+    @Select("SELECT student_id, student_name, gender, age FROM student WHERE student_id > #{afterId} "
+            + "ORDER BY student_id LIMIT #{limit}")
+    List<Student> selectPage(@Param("afterId") int afterId, @Param("limit") int limit);
+
+    /**
+     * 按主键顺序流式读取全表，JDBC按fetchSize分批拉取；需在事务（同一会话）内遍历
+     */
+    @Select("SELECT student_id, student_name, gender, age FROM student ORDER BY student_id")
+    @Options(fetchSize = 1000, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<Student> selectAllCursor();
+
 }
@@ -0,0 +1,16 @@
+package cn.yyzmain.h2.mapper;
+
+import cn.yyzmain.kafka.entity.WindowAggregate;
+import org.apache.ibatis.annotations.Insert;
+
+public interface WindowAggregateMapper {
+
+    /**
+     * 按窗口主键插入或覆盖，重启后重复输出同一窗口结果不变
+     */
+    @Insert("MERGE INTO window_aggregate (window_type, category, window_start, window_end, record_count, rate_per_second) "
+            + "KEY (window_type, category, window_start) "
+            + "VALUES (#{windowType}, #{category}, #{windowStart}, #{windowEnd}, #{recordCount}, #{ratePerSecond})")
+    int merge(WindowAggregate aggregate);
+
+}
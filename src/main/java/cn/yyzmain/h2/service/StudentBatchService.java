@@ -0,0 +1,178 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.entity.StudentBatchResult;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * student表批量写入：MyBatis BATCH执行器复用同一条预编译语句，整批一个事务
+ */
+@Service
+@RequiredArgsConstructor
+public class StudentBatchService {
+
+    private final SqlSessionFactory sqlSessionFactory;
+
+    private final StudentMapper studentMapper;
+
+    private final StudentCache studentCache;
+
+    /**
+     * 每攒多少条执行一次JDBC executeBatch
+     */
+    @Value("${app.h2.batch.chunk-size:500}")
+    private int chunkSize;
+
+    private SqlSessionTemplate batchSqlSession;
+
+    /**
+     * student_name 列长度
+     */
+    private static final int MAX_NAME_LENGTH = 50;
+
+    @PostConstruct
+    public void init() {
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+
+    /**
+     * 整批MERGE，任意一条失败整批回滚
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int mergeBatch(List<Student> students) {
+        final StudentMapper batchMapper = batchSqlSession.getMapper(StudentMapper.class);
+        for (int i = 0; i < students.size(); i++) {
+            batchMapper.merge(students.get(i));
+            if ((i + 1) % chunkSize == 0) {
+                batchSqlSession.flushStatements();
+            }
+        }
+        batchSqlSession.flushStatements();
+        studentCache.evict(students.stream().map(Student::getStudentId).collect(Collectors.toList()));
+        return students.size();
+    }
+
+    /**
+     * 整批INSERT，主键已存在或任意一条失败整批回滚
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int insertBatch(List<Student> students) {
+        final StudentMapper batchMapper = batchSqlSession.getMapper(StudentMapper.class);
+        for (int i = 0; i < students.size(); i++) {
+            batchMapper.insert(students.get(i));
+            if ((i + 1) % chunkSize == 0) {
+                batchSqlSession.flushStatements();
+            }
+        }
+        batchSqlSession.flushStatements();
+        studentCache.evict(students.stream().map(Student::getStudentId).collect(Collectors.toList()));
+        return students.size();
+    }
+
+    /**
+     * 单条MERGE，自身一个事务
+     */
+    public int merge(Student student) {
+        final int rows = studentMapper.merge(student);
+        studentCache.evict(Collections.singletonList(student.getStudentId()));
+        return rows;
+    }
+
+    /**
+     * 批量添加：先逐行校验，再查出已存在的studentId，这两类行不写入并按行返回原因；
+     * 其余行在一个事务内分块批量INSERT。写库失败（包括校验后被并发写入的主键）整批回滚，异常抛给调用方
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public StudentBatchResult addBatch(List<Student> students) {
+        final long start = System.currentTimeMillis();
+        final StudentBatchResult result = new StudentBatchResult();
+        final List<Integer> indexes = new ArrayList<>(students.size());
+        final Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < students.size(); i++) {
+            final Student student = students.get(i);
+            final String error = validate(student, ids);
+            if (error != null) {
+                result.getErrors().add(rowError(i, student, error));
+                continue;
+            }
+            indexes.add(i);
+        }
+        final Set<Integer> existing = existingIds(indexes, students);
+        final List<Student> inserts = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            final Student student = students.get(index);
+            if (existing.contains(student.getStudentId())) {
+                result.getErrors().add(rowError(index, student, "studentId已存在"));
+                continue;
+            }
+            inserts.add(student);
+            result.getInsertedIds().add(student.getStudentId());
+        }
+        if (!inserts.isEmpty()) {
+            insertBatch(inserts);
+        }
+        result.getErrors().sort(Comparator.comparingInt(StudentBatchResult.RowError::getIndex));
+        return result.setCostMs(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 按块查询，IN列表长度不超过 chunkSize；与随后的批量INSERT同在一个事务中，必须走同一个BATCH会话，
+     * 事务内不能切换执行器类型
+     */
+    private Set<Integer> existingIds(List<Integer> indexes, List<Student> students) {
+        final StudentMapper batchMapper = batchSqlSession.getMapper(StudentMapper.class);
+        final Set<Integer> existing = new HashSet<>();
+        for (int from = 0; from < indexes.size(); from += chunkSize) {
+            final List<Integer> chunk = new ArrayList<>(chunkSize);
+            for (Integer index : indexes.subList(from, Math.min(indexes.size(), from + chunkSize))) {
+                chunk.add(students.get(index).getStudentId());
+            }
+            existing.addAll(batchMapper.selectExistingIds(chunk));
+        }
+        return existing;
+    }
+
+    private static StudentBatchResult.RowError rowError(int index, Student student, String error) {
+        return new StudentBatchResult.RowError().setIndex(index)
+                .setStudentId(student == null ? null : student.getStudentId()).setError(error);
+    }
+
+    /**
+     * @return 校验失败原因，通过返回null
+     */
+    static String validate(Student student, Set<Integer> seenIds) {
+        if (student == null) {
+            return "student不能为空";
+        }
+        if (student.getStudentId() == null) {
+            return "studentId不能为空";
+        }
+        if (StringUtils.isBlank(student.getStudentName()) || student.getStudentName().length() > MAX_NAME_LENGTH) {
+            return "studentName不能为空且不超过" + MAX_NAME_LENGTH + "个字符";
+        }
+        if (student.getGender() == null || student.getAge() == null) {
+            return "gender、age不能为空";
+        }
+        if (!seenIds.add(student.getStudentId())) {
+            return "studentId在请求中重复";
+        }
+        return null;
+    }
+}
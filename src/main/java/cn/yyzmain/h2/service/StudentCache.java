@@ -0,0 +1,163 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * student读缓存：按ID和按游标分页两类，Caffeine（W-TinyLFU淘汰）限制条数
+ * <p>
+ * 同一key并发未命中时只有一个线程查库，其余等待其结果；不存在的ID以较短的TTL缓存，避免反复查库；
+ * 写入后（有事务时在提交后）按ID失效，分页缓存通过递增代数整体失效。返回的对象为缓存共享实例，调用方不要修改
+ */
+@Slf4j
+@Service
+public class StudentCache {
+
+    private final StudentMapper studentMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.h2.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.h2.cache.max-size:10000}")
+    private long maxSize;
+    /**
+     * 存在的记录缓存时间：ms
+     */
+    @Value("${app.h2.cache.ttl-ms:60000}")
+    private long ttlMs;
+    /**
+     * 不存在的ID缓存时间：ms
+     */
+    @Value("${app.h2.cache.negative-ttl-ms:5000}")
+    private long negativeTtlMs;
+
+    @Value("${app.h2.cache.page-max-size:1000}")
+    private long pageMaxSize;
+
+    @Value("${app.h2.cache.page-ttl-ms:5000}")
+    private long pageTtlMs;
+
+    private LoadingCache<Integer, Optional<Student>> byId;
+
+    private LoadingCache<PageKey, List<Student>> pages;
+
+    /**
+     * 分页缓存代数，任意写入后递增，旧代的分页不再被读取并随淘汰清除
+     */
+    private final AtomicLong pageGeneration = new AtomicLong();
+
+    public StudentCache(StudentMapper studentMapper, MeterRegistry meterRegistry) {
+        this.studentMapper = studentMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        final long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        final long negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Integer, Optional<Student>>() {
+                    @Override
+                    public long expireAfterCreate(Integer key, Optional<Student> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer key, Optional<Student> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer key, Optional<Student> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build(id -> Optional.ofNullable(studentMapper.selectById(id)));
+        pages = Caffeine.newBuilder()
+                .maximumSize(pageMaxSize)
+                .expireAfterWrite(pageTtlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(key -> studentMapper.selectPage(key.getAfterId(), key.getLimit()));
+        // 指标：cache.gets{result=hit|miss}、cache.evictions、cache.size、cache.load.duration 等
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "student.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "student.page");
+        log.info("==>>>student缓存: max-size:{}, ttl:{}ms, page-max-size:{}, page-ttl:{}ms", maxSize, ttlMs,
+                pageMaxSize, pageTtlMs);
+    }
+
+    /**
+     * 按ID查询，不存在返回null
+     */
+    public Student get(int studentId) {
+        if (!enabled) {
+            return studentMapper.selectById(studentId);
+        }
+        return byId.get(studentId).orElse(null);
+    }
+
+    /**
+     * 游标分页，见 {@link StudentMapper#selectPage(int, int)}
+     */
+    public List<Student> page(int afterId, int limit) {
+        if (!enabled) {
+            return studentMapper.selectPage(afterId, limit);
+        }
+        return pages.get(new PageKey(pageGeneration.get(), afterId, limit));
+    }
+
+    /**
+     * 写入后失效：在事务中时推迟到提交后，避免其他线程在提交前把旧数据重新读进缓存
+     */
+    public void evict(Collection<Integer> studentIds) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    doEvict(studentIds);
+                }
+            });
+            return;
+        }
+        doEvict(studentIds);
+    }
+
+    private void doEvict(Collection<Integer> studentIds) {
+        byId.invalidateAll(studentIds);
+        pageGeneration.incrementAndGet();
+    }
+
+    @Data
+    private static final class PageKey {
+        private final long generation;
+        private final int afterId;
+        private final int limit;
+    }
+}
@@ -0,0 +1,53 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * student表流式导出：游标逐行读取、逐行写出JSON数组，内存占用与表大小无关
+ */
+@Service
+@RequiredArgsConstructor
+public class StudentExportService {
+
+    /**
+     * 每写出多少行刷新一次输出流
+     */
+    private static final int FLUSH_ROWS = 1000;
+
+    private final StudentMapper studentMapper;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * 游标需要在同一会话内遍历，整个导出在一个只读事务中
+     *
+     * @return 导出行数
+     */
+    @Transactional(readOnly = true, rollbackFor = Exception.class)
+    public int export(Writer out) throws IOException {
+        final JsonWriter writer = new JsonWriter(out);
+        int rows = 0;
+        try (Cursor<Student> cursor = studentMapper.selectAllCursor()) {
+            writer.beginArray();
+            for (Student student : cursor) {
+                gson.toJson(student, Student.class, writer);
+                if (++rows % FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            }
+            writer.endArray();
+        }
+        writer.flush();
+        return rows;
+    }
+}
@@ -0,0 +1,38 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.mapper.WindowAggregateMapper;
+import cn.yyzmain.kafka.entity.WindowAggregate;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * 窗口统计结果写入window_aggregate表，表结构见 sql/init.sql
+ */
+@Service
+@RequiredArgsConstructor
+public class WindowAggregateService {
+
+    private final SqlSessionFactory sqlSessionFactory;
+
+    private SqlSessionTemplate batchSqlSession;
+
+    @PostConstruct
+    public void init() {
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    public int mergeBatch(List<WindowAggregate> aggregates) {
+        final WindowAggregateMapper batchMapper = batchSqlSession.getMapper(WindowAggregateMapper.class);
+        aggregates.forEach(batchMapper::merge);
+        batchSqlSession.flushStatements();
+        return aggregates.size();
+    }
+}
@@ -0,0 +1,281 @@
+package cn.yyzmain.kafka.aggregate;
+
+import cn.yyzmain.h2.service.WindowAggregateService;
+import cn.yyzmain.kafka.entity.WindowAggregate;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费消息按业务类别（消息前缀 a-/b-/c-）做滚动、滑动窗口的增量计数，替代离线重扫统计
+ * <p>
+ * 以消息时间戳为准，关闭的窗口结果写入H2表 window_aggregate 或输出主题；
+ * 未关闭窗口的计数定期写检查点文件，重启后恢复。检查点与offset提交不是原子的，
+ * 异常退出后重新消费的消息可能被重复计数
+ */
+@Slf4j
+@Component
+public class WindowAggregator {
+
+    public static final String OUTPUT_H2 = "h2";
+    public static final String OUTPUT_TOPIC = "topic";
+
+    @Value("${app.kafka.aggregate.enabled:false}")
+    private boolean enabled;
+    /**
+     * 窗格大小即滚动窗口长度：ms
+     */
+    @Value("${app.kafka.aggregate.pane-ms:60000}")
+    private long paneMs;
+    /**
+     * 滑动窗口包含的窗格数，按窗格滑动；1表示只统计滚动窗口
+     */
+    @Value("${app.kafka.aggregate.sliding-panes:5}")
+    private int slidingPanes;
+    /**
+     * 允许的消息乱序延迟：ms
+     */
+    @Value("${app.kafka.aggregate.allowed-lateness-ms:5000}")
+    private long allowedLatenessMs;
+    /**
+     * 超过该时间没有新消息时按墙钟推进水位线：ms
+     */
+    @Value("${app.kafka.aggregate.idle-ms:30000}")
+    private long idleMs;
+    /**
+     * 最多统计的类别数，超出的归入 other
+     */
+    @Value("${app.kafka.aggregate.max-keys:1024}")
+    private int maxKeys;
+    /**
+     * 输出方式：h2 / topic
+     */
+    @Value("${app.kafka.aggregate.output:h2}")
+    private String output;
+
+    @Value("${app.kafka.aggregate.output-topic:yyzmain-window}")
+    private String outputTopic;
+
+    @Value("${app.kafka.aggregate.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+    /**
+     * 输出失败时最多保留的结果数，超出丢弃最早的
+     */
+    @Value("${app.kafka.aggregate.max-pending:100000}")
+    private int maxPending;
+
+    @Value("${app.kafka.aggregate.checkpoint-file:./data/aggregate/checkpoint.json}")
+    private String checkpointFile;
+
+    @Value("${app.kafka.aggregate.checkpoint-interval-ms:10000}")
+    private long checkpointIntervalMs;
+
+    private final WindowAggregateService windowAggregateService;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Gson gson = new Gson();
+
+    private WindowState state;
+    /**
+     * 已关闭待输出的结果，由this保护
+     */
+    private List<WindowAggregate> pending = new ArrayList<>();
+    private long lastArrival;
+    private long lastCheckpoint;
+
+    private ScheduledExecutorService scheduler;
+
+    public WindowAggregator(WindowAggregateService windowAggregateService, KafkaTemplate<String, String> kafkaTemplate,
+                            MeterRegistry meterRegistry) {
+        this.windowAggregateService = windowAggregateService;
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        state = new WindowState(paneMs, slidingPanes, allowedLatenessMs, maxKeys);
+        restore();
+        lastArrival = System.currentTimeMillis();
+        lastCheckpoint = lastArrival;
+        FunctionCounter.builder("kafka.aggregate.late", this, aggregator -> aggregator.state.getLateCount())
+                .description("晚于已关闭窗口被丢弃的消息数").register(meterRegistry);
+        Gauge.builder("kafka.aggregate.pending", this, aggregator -> aggregator.pendingCount())
+                .description("已关闭待输出的窗口结果数").register(meterRegistry);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "window-aggregate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("==>>>窗口统计: pane:{}ms, sliding-panes:{}, output:{}", paneMs, slidingPanes, output);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        emit();
+        checkpoint();
+    }
+
+    /**
+     * 累加一批消息，excluded 中的消息（需要回退重新消费的）不计入
+     */
+    public void add(List<ConsumerRecord<String, String>> records, Collection<ConsumerRecord<String, String>> excluded) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+        final Set<ConsumerRecord<String, String>> skip = excluded.isEmpty() ? null : new HashSet<>(excluded);
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (ConsumerRecord<String, String> record : records) {
+                if (skip == null || !skip.contains(record)) {
+                    state.add(record.value(), record.timestamp() >= 0 ? record.timestamp() : now);
+                }
+            }
+            lastArrival = now;
+        }
+    }
+
+    private void tick() {
+        try {
+            final long now = System.currentTimeMillis();
+            synchronized (this) {
+                // 长时间没有新消息时按墙钟推进水位线，保证最后的窗口能关闭输出
+                if (now - lastArrival >= idleMs) {
+                    state.advanceTo(state.getMaxTimestamp() + (now - lastArrival) - allowedLatenessMs);
+                }
+                pending.addAll(state.drainClosed());
+            }
+            emit();
+            if (now - lastCheckpoint >= checkpointIntervalMs) {
+                checkpoint();
+                lastCheckpoint = now;
+            }
+        } catch (Exception e) {
+            log.error("==>>>窗口统计输出异常", e);
+        }
+    }
+
+    private void emit() {
+        final List<WindowAggregate> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            write(batch);
+            log.debug("==>>>窗口统计输出{}条", batch.size());
+        } catch (Exception e) {
+            log.error("==>>>窗口统计输出失败，下次重试,size:{}", batch.size(), e);
+            synchronized (this) {
+                batch.addAll(pending);
+                if (batch.size() > maxPending) {
+                    log.error("==>>>待输出窗口结果超过上限，丢弃最早的{}条", batch.size() - maxPending);
+                    batch.subList(0, batch.size() - maxPending).clear();
+                }
+                pending = batch;
+            }
+        }
+    }
+
+    private void write(List<WindowAggregate> batch) throws Exception {
+        if (!OUTPUT_TOPIC.equals(output)) {
+            windowAggregateService.mergeBatch(batch);
+            return;
+        }
+        final List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(batch.size());
+        for (WindowAggregate aggregate : batch) {
+            futures.add(kafkaTemplate.send(outputTopic, aggregate.getCategory(), gson.toJson(aggregate)));
+        }
+        kafkaTemplate.flush();
+        for (ListenableFuture<SendResult<String, String>> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免写到一半时退出留下损坏的检查点
+     */
+    private void checkpoint() {
+        final String json;
+        synchronized (this) {
+            final WindowState.Checkpoint checkpoint = state.checkpoint();
+            checkpoint.setPending(new ArrayList<>(pending));
+            json = gson.toJson(checkpoint);
+        }
+        final File file = new File(checkpointFile);
+        final File tmp = new File(checkpointFile + ".tmp");
+        try {
+            if (file.getParentFile() != null) {
+                Files.createDirectories(file.getParentFile().toPath());
+            }
+            Files.write(tmp.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("==>>>窗口统计检查点写入失败,{}", file, e);
+        }
+    }
+
+    private void restore() {
+        final File file = new File(checkpointFile);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            final WindowState.Checkpoint checkpoint = gson.fromJson(json, WindowState.Checkpoint.class);
+            if (checkpoint == null || !state.restore(checkpoint)) {
+                log.warn("==>>>窗口配置已变化，忽略检查点,{}", file);
+                return;
+            }
+            if (checkpoint.getPending() != null) {
+                pending.addAll(checkpoint.getPending());
+            }
+            log.info("==>>>窗口统计从检查点恢复,类别数:{}, 待输出:{}", state.keyCount(), pending.size());
+        } catch (Exception e) {
+            log.error("==>>>窗口统计检查点读取失败，从空状态开始,{}", file, e);
+        }
+    }
+}
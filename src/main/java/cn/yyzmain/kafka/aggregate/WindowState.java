@@ -0,0 +1,301 @@
+package cn.yyzmain.kafka.aggregate;
+
+import cn.yyzmain.kafka.entity.WindowAggregate;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按消息前缀分类的窗口计数状态，非线程安全，由 {@link WindowAggregator} 加锁调用
+ * <p>
+ * 时间按 paneMs 切成窗格，每个类别用两个long数组组成的环形缓冲记录最近若干窗格的条数：
+ * 滚动窗口即单个窗格，滑动窗口为最近 slidingPanes 个窗格之和；
+ * 水位线 = 最大消息时间戳 - 允许延迟，窗格结束时间不晚于水位线即关闭并输出，晚于已关闭窗格的消息计为迟到丢弃
+ */
+class WindowState {
+
+    static final String OTHER = "other";
+
+    /**
+     * 前缀最长字符数（含'-'），超过视为没有前缀
+     */
+    private static final int MAX_PREFIX_LENGTH = 16;
+
+    private final long paneMs;
+    private final int slidingPanes;
+    private final long allowedLatenessMs;
+    private final int maxKeys;
+    private final int ringSize;
+
+    private KeyState[] table;
+    private final List<KeyState> keys = new ArrayList<>();
+    private final KeyState other;
+
+    private boolean started;
+    private long maxTimestamp;
+    private long maxPane;
+    private long lastClosedPane;
+    private long lateCount;
+
+    private List<WindowAggregate> closed = new ArrayList<>();
+
+    WindowState(long paneMs, int slidingPanes, long allowedLatenessMs, int maxKeys) {
+        this.paneMs = paneMs;
+        this.slidingPanes = Math.max(1, slidingPanes);
+        this.allowedLatenessMs = Math.max(0, allowedLatenessMs);
+        this.maxKeys = maxKeys;
+        // 未关闭的窗格最多跨 延迟/窗格+1 个，另需保留已关闭的 slidingPanes-1 个供滑动窗口求和
+        this.ringSize = this.slidingPanes + (int) ((this.allowedLatenessMs + paneMs - 1) / paneMs) + 2;
+        this.table = new KeyState[Integer.highestOneBit(Math.max(maxKeys, 8) * 2) * 2];
+        this.other = new KeyState(OTHER, 0, ringSize);
+    }
+
+    /**
+     * 累加一条消息
+     *
+     * @return 是否计入，迟到的消息返回false
+     */
+    boolean add(String value, long timestamp) {
+        final long pane = Math.floorDiv(timestamp, paneMs);
+        if (!started) {
+            started = true;
+            maxTimestamp = timestamp;
+            maxPane = pane;
+            lastClosedPane = Math.floorDiv(timestamp - allowedLatenessMs, paneMs) - 1;
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+            // 先关闭到期窗格腾出环形缓冲位置，再写入
+            advanceTo(timestamp - allowedLatenessMs);
+        }
+        if (pane <= lastClosedPane) {
+            lateCount++;
+            return false;
+        }
+        maxPane = Math.max(maxPane, pane);
+        keyOf(value).increment(pane, 1);
+        return true;
+    }
+
+    /**
+     * 水位线推进到 watermark，关闭结束时间不晚于它的窗格
+     */
+    void advanceTo(long watermark) {
+        if (!started) {
+            return;
+        }
+        final long target = Math.floorDiv(watermark, paneMs) - 1;
+        for (long pane = lastClosedPane + 1; pane <= target; pane++) {
+            if (pane >= maxPane + slidingPanes) {
+                // 之后的窗格都没有数据，直接跳过
+                lastClosedPane = target;
+                return;
+            }
+            closePane(pane);
+        }
+    }
+
+    private void closePane(long pane) {
+        closePane(other, pane);
+        for (KeyState key : keys) {
+            closePane(key, pane);
+        }
+        lastClosedPane = pane;
+    }
+
+    private void closePane(KeyState key, long pane) {
+        final long count = key.count(pane);
+        if (count > 0) {
+            closed.add(aggregate(WindowAggregate.TUMBLING, key.key, pane, pane, count));
+        }
+        if (slidingPanes > 1) {
+            long sum = 0;
+            for (long p = pane - slidingPanes + 1; p <= pane; p++) {
+                sum += key.count(p);
+            }
+            if (sum > 0) {
+                closed.add(aggregate(WindowAggregate.SLIDING, key.key, pane - slidingPanes + 1, pane, sum));
+            }
+        }
+    }
+
+    private WindowAggregate aggregate(String type, String category, long firstPane, long lastPane, long count) {
+        final long start = firstPane * paneMs;
+        final long end = (lastPane + 1) * paneMs;
+        return new WindowAggregate().setWindowType(type).setCategory(category).setWindowStart(start)
+                .setWindowEnd(end).setRecordCount(count).setRatePerSecond(count * 1000.0 / (end - start));
+    }
+
+    /**
+     * 取出已关闭窗口的结果
+     */
+    List<WindowAggregate> drainClosed() {
+        if (closed.isEmpty()) {
+            return closed;
+        }
+        final List<WindowAggregate> drained = closed;
+        closed = new ArrayList<>();
+        return drained;
+    }
+
+    long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    long getLateCount() {
+        return lateCount;
+    }
+
+    int keyCount() {
+        return keys.size();
+    }
+
+    /**
+     * 前缀为第一个'-'及之前的字符，按字符哈希在开放寻址表中查找，已存在的类别不创建字符串
+     */
+    private KeyState keyOf(String value) {
+        if (value == null) {
+            return other;
+        }
+        final int limit = Math.min(value.length(), MAX_PREFIX_LENGTH);
+        int length = -1;
+        int hash = 0;
+        for (int i = 0; i < limit; i++) {
+            final char c = value.charAt(i);
+            hash = 31 * hash + c;
+            if (c == '-') {
+                length = i + 1;
+                break;
+            }
+        }
+        if (length < 0) {
+            return other;
+        }
+        final int mask = table.length - 1;
+        int index = mix(hash) & mask;
+        KeyState key;
+        while ((key = table[index]) != null) {
+            if (key.hash == hash && key.key.length() == length && key.key.regionMatches(0, value, 0, length)) {
+                return key;
+            }
+            index = (index + 1) & mask;
+        }
+        if (keys.size() >= maxKeys) {
+            return other;
+        }
+        key = new KeyState(value.substring(0, length), hash, ringSize);
+        table[index] = key;
+        keys.add(key);
+        return key;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    Checkpoint checkpoint() {
+        final Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setPaneMs(paneMs);
+        checkpoint.setSlidingPanes(slidingPanes);
+        checkpoint.setStarted(started);
+        checkpoint.setMaxTimestamp(maxTimestamp);
+        checkpoint.setMaxPane(maxPane);
+        checkpoint.setLastClosedPane(lastClosedPane);
+        checkpoint.setLateCount(lateCount);
+        final List<KeyCheckpoint> keyCheckpoints = new ArrayList<>(keys.size() + 1);
+        keyCheckpoints.add(other.checkpoint());
+        keys.forEach(key -> keyCheckpoints.add(key.checkpoint()));
+        checkpoint.setKeys(keyCheckpoints);
+        return checkpoint;
+    }
+
+    /**
+     * 从检查点恢复，窗格大小或滑动窗格数变化时无法恢复
+     *
+     * @return 是否恢复
+     */
+    boolean restore(Checkpoint checkpoint) {
+        if (checkpoint.getPaneMs() != paneMs || checkpoint.getSlidingPanes() != slidingPanes) {
+            return false;
+        }
+        started = checkpoint.isStarted();
+        maxTimestamp = checkpoint.getMaxTimestamp();
+        maxPane = checkpoint.getMaxPane();
+        lastClosedPane = checkpoint.getLastClosedPane();
+        lateCount = checkpoint.getLateCount();
+        for (KeyCheckpoint keyCheckpoint : checkpoint.getKeys()) {
+            final KeyState key = OTHER.equals(keyCheckpoint.getKey()) ? other : keyOf(keyCheckpoint.getKey());
+            final long[] panes = keyCheckpoint.getPanes();
+            for (int i = 0; i < panes.length; i++) {
+                // 只保留仍可能参与输出的窗格
+                if (panes[i] >= lastClosedPane - slidingPanes + 2 && keyCheckpoint.getCounts()[i] > 0) {
+                    key.increment(panes[i], keyCheckpoint.getCounts()[i]);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final class KeyState {
+
+        private final String key;
+        private final int hash;
+        private final long[] panes;
+        private final long[] counts;
+
+        KeyState(String key, int hash, int ringSize) {
+            this.key = key;
+            this.hash = hash;
+            this.panes = new long[ringSize];
+            this.counts = new long[ringSize];
+            Arrays.fill(panes, Long.MIN_VALUE);
+        }
+
+        void increment(long pane, long delta) {
+            final int slot = (int) Math.floorMod(pane, (long) panes.length);
+            if (panes[slot] != pane) {
+                panes[slot] = pane;
+                counts[slot] = 0;
+            }
+            counts[slot] += delta;
+        }
+
+        long count(long pane) {
+            final int slot = (int) Math.floorMod(pane, (long) panes.length);
+            return panes[slot] == pane ? counts[slot] : 0;
+        }
+
+        KeyCheckpoint checkpoint() {
+            final KeyCheckpoint checkpoint = new KeyCheckpoint();
+            checkpoint.setKey(key);
+            checkpoint.setPanes(panes.clone());
+            checkpoint.setCounts(counts.clone());
+            return checkpoint;
+        }
+    }
+
+    @Data
+    static class Checkpoint {
+        private long paneMs;
+        private int slidingPanes;
+        private boolean started;
+        private long maxTimestamp;
+        private long maxPane;
+        private long lastClosedPane;
+        private long lateCount;
+        private List<KeyCheckpoint> keys;
+        /**
+         * 已关闭未输出的结果
+         */
+        private List<WindowAggregate> pending;
+    }
+
+    @Data
+    static class KeyCheckpoint {
+        private String key;
+        private long[] panes;
+        private long[] counts;
+    }
+}
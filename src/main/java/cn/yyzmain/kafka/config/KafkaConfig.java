@@ -1,16 +1,33 @@
 package cn.yyzmain.kafka.config;
 
+import cn.yyzmain.kafka.listen.MessageTransformer;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import cn.yyzmain.kafka.process.RecordHandler;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -20,6 +37,11 @@ import java.util.Map;
 @Slf4j
 public class KafkaConfig {
 
+    /**
+     * 重试监听器消费组 = 主消费组 + 该后缀
+     */
+    public static final String RETRY_GROUP_SUFFIX = ".retry";
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String servers;
     @Value("${spring.kafka.consumer.session-timeout}")
@@ -36,20 +58,146 @@ public class KafkaConfig {
     @Value("${spring.kafka.listener.concurrency:5}")
     private int concurrency;
 
+    /**
+     * 事务模式：消费-转换-生产在同一个kafka事务中提交
+     */
+    @Value("${app.kafka.tx.enabled:false}")
+    private boolean transactional;
+    @Value("${app.kafka.tx.transaction-id-prefix:main-tx-}")
+    private String transactionIdPrefix;
+    /**
+     * offset定时提交间隔，也作为容器空闲事件间隔
+     */
+    @Value("${app.kafka.commit.interval-ms:5000}")
+    private long commitIntervalMs;
+    /**
+     * 重试监听器空闲事件间隔，决定暂停分区到期后恢复的及时性
+     */
+    @Value("${app.kafka.retry.idle-interval-ms:500}")
+    private long retryIdleIntervalMs;
+    /**
+     * 背压暂停后检查恢复的间隔
+     */
+    @Value("${app.kafka.flow.check-interval-ms:500}")
+    private long flowCheckIntervalMs;
+    /**
+     * 主监听消费模式：string / bytes
+     */
+    @Value("${app.kafka.consumer.mode:string}")
+    private String consumerMode;
+
     @Bean
-    public KafkaListenerContainerFactory<?> batchFactory() {
+    public KafkaListenerContainerFactory<?> batchFactory(
+            @Qualifier("txProducerFactory") ObjectProvider<ProducerFactory<String, String>> txProducerFactory,
+            OffsetTracker offsetTracker, MeterRegistry meterRegistry) {
         ConcurrentKafkaListenerContainerFactory<Integer, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(consumerConfigs()));
+        factory.setConsumerFactory(consumerFactory(meterRegistry, StringDeserializer.class));
         //跟分区数对应，可以提高消费速率
         factory.setConcurrency(concurrency);
         //设置为批量消费，每个批次数量在Kafka配置参数中设置
         factory.setBatchListener(true);
         //设置手动提交ackMode
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        if (transactional) {
+            //容器开启事务，手动提交的offset随事务一起提交；事务管理器不注册为bean，避免替换掉数据源的事务管理器
+            factory.getContainerProperties().setTransactionManager(new KafkaTransactionManager<>(txProducerFactory.getObject()));
+        } else {
+            //offset由OffsetTracker按连续完成位置提交：重平衡前提交已完成部分，空闲时补提交；
+            //空闲事件同时用于背压暂停后的恢复检查
+            factory.getContainerProperties().setConsumerRebalanceListener(offsetTracker);
+            factory.getContainerProperties().setIdleEventInterval(Math.min(commitIntervalMs, flowCheckIntervalMs));
+        }
+        return factory;
+    }
+
+    /**
+     * bytes模式：key、value不反序列化为String，由监听器按原始字节过滤后再解码；不支持事务模式
+     */
+    @Bean
+    public KafkaListenerContainerFactory<?> bytesBatchFactory(OffsetTracker offsetTracker, MeterRegistry meterRegistry) {
+        if (transactional && "bytes".equals(consumerMode)) {
+            throw new IllegalStateException("app.kafka.consumer.mode=bytes does not support app.kafka.tx.enabled=true");
+        }
+        ConcurrentKafkaListenerContainerFactory<byte[], byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory(meterRegistry, ByteArrayDeserializer.class));
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(offsetTracker);
+        factory.getContainerProperties().setIdleEventInterval(Math.min(commitIntervalMs, flowCheckIntervalMs));
         return factory;
     }
 
-    private Map<String, Object> consumerConfigs() {
+    /**
+     * 重试主题监听：单线程，未到期的分区暂停而不是阻塞等待；
+     * 使用独立的消费组，主监听重启或调整并发时不会连带重平衡重试消费者
+     */
+    @Bean
+    public KafkaListenerContainerFactory<?> retryFactory(OffsetTracker offsetTracker, MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<Integer, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory(meterRegistry, StringDeserializer.class, groupId + RETRY_GROUP_SUFFIX));
+        factory.setConcurrency(1);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(offsetTracker);
+        factory.getContainerProperties().setIdleEventInterval(retryIdleIntervalMs);
+        return factory;
+    }
+
+    /**
+     * 事务模式使用的幂等、事务producer
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.tx.enabled", havingValue = "true")
+    public ProducerFactory<String, String> txProducerFactory(KafkaProperties kafkaProperties) {
+        final Map<String, Object> props = kafkaProperties.buildProducerProperties();
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        final DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.setTransactionIdPrefix(transactionIdPrefix);
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.tx.enabled", havingValue = "true")
+    public KafkaTemplate<String, String> txKafkaTemplate(@Qualifier("txProducerFactory") ProducerFactory<String, String> txProducerFactory) {
+        return new KafkaTemplate<>(txProducerFactory);
+    }
+
+    /**
+     * 默认不做转换，原样转发
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "app.kafka.tx.enabled", havingValue = "true")
+    public MessageTransformer messageTransformer() {
+        return ConsumerRecord::value;
+    }
+
+    /**
+     * 默认的消息处理：打印日志
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RecordHandler recordHandler() {
+        return record -> log.info("消费到数据: {}", record);
+    }
+
+    /**
+     * 消费者客户端指标（分区积压records-lag、拉取速率等）注册到micrometer
+     */
+    private <K, V> DefaultKafkaConsumerFactory<K, V> consumerFactory(MeterRegistry meterRegistry, Class<?> deserializer) {
+        return consumerFactory(meterRegistry, deserializer, groupId);
+    }
+
+    private <K, V> DefaultKafkaConsumerFactory<K, V> consumerFactory(MeterRegistry meterRegistry, Class<?> deserializer,
+                                                                     String groupId) {
+        final DefaultKafkaConsumerFactory<K, V> consumerFactory = new DefaultKafkaConsumerFactory<>(consumerConfigs(deserializer, groupId));
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return consumerFactory;
+    }
+
+    private Map<String, Object> consumerConfigs(Class<?> deserializer, String groupId) {
         Map<String, Object> propsMap = new HashMap<>();
         //设置服务地址
         propsMap.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
@@ -61,12 +209,16 @@ public class KafkaConfig {
         propsMap.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         //设置单次数据处理会话超时时间
         propsMap.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeout);
-        propsMap.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        propsMap.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        propsMap.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, deserializer);
+        propsMap.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, deserializer);
         //设置批量消费大小
         propsMap.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
         //设置批量拉取间隔大小
         propsMap.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
+        if (transactional) {
+            //只读取已提交事务的消息
+            propsMap.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        }
         return propsMap;
     }
 
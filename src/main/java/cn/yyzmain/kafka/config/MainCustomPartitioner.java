@@ -1,38 +1,103 @@
 package cn.yyzmain.kafka.config;
 
+import cn.yyzmain.kafka.metrics.ProducerTrafficStats;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.Partitioner;
 import org.apache.kafka.common.Cluster;
-import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 自定义分区策略：按消息前缀路由到指定分区，其余按key做murmur2哈希
+ * <p>
+ * 路由表通过producer配置 {@value #ROUTES_CONFIG} 指定，格式 {@code a-:0,b-:1,c-:2}；
+ * 若 {@link PartitionRouteRegistry} 中发布了动态路由表（来自zk）则优先使用；
+ * partition() 在发送热点路径上，逐字节匹配前缀、缓存主题分区数，不产生对象分配
+ */
 @Slf4j
 @Component
 public class MainCustomPartitioner implements Partitioner {
 
+    /**
+     * 路由表配置项：spring.kafka.producer.properties.main.partitioner.routes
+     */
+    public static final String ROUTES_CONFIG = "main.partitioner.routes";
+
+    public static final String DEFAULT_ROUTES = "a-:0,b-:1,c-:2";
+
+    /**
+     * 分区流量统计开关及热点统计参数
+     */
+    public static final String STATS_ENABLED_CONFIG = "main.partitioner.stats.enabled";
+    public static final String STATS_SKETCH_WIDTH_CONFIG = "main.partitioner.stats.sketch-width";
+    public static final String STATS_TOP_K_CONFIG = "main.partitioner.stats.top-k";
+
+    private volatile PartitionRouteTable routeTable = PartitionRouteTable.parse(DEFAULT_ROUTES);
+
+    /**
+     * 主题 -> 分区数，元数据更新（Cluster对象变化）时清空
+     */
+    private final Map<String, Integer> partitionCounts = new ConcurrentHashMap<>();
+
+    private volatile Cluster cachedCluster;
+
+    /**
+     * key和value都为空时轮询分区
+     */
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
     @Override
     public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
-        // 获取主题分区数
-        List<PartitionInfo> partitions = cluster.partitionsForTopic(topic);
-        int numPartitions = partitions.size();
+        final int partition = choosePartition(topic, keyBytes, valueBytes, cluster);
+        final ProducerTrafficStats stats = ProducerTrafficStats.INSTANCE;
+        if (stats.isEnabled()) {
+            stats.record(topic, partition, keyBytes, valueBytes);
+        }
+        return partition;
+    }
 
-        // 按数据开头数据分配分区
-        final String message = String.valueOf(value);
-        if (message.startsWith("a-")) {
+    private int choosePartition(String topic, byte[] keyBytes, byte[] valueBytes, Cluster cluster) {
+        // 获取主题分区数
+        final int numPartitions = partitionCount(topic, cluster);
+        if (numPartitions <= 0) {
             return 0;
         }
-        if (message.startsWith("b-")) {
-            return 1;
+
+        // 按数据开头数据分配分区，超出实际分区数的路由视为未命中
+        final PartitionRouteTable dynamicTable = PartitionRouteRegistry.current();
+        final int routed = (dynamicTable != null ? dynamicTable : routeTable).match(valueBytes);
+        if (routed >= 0 && routed < numPartitions) {
+            return routed;
         }
-        if (message.startsWith("c-")) {
-            return 2;
+
+        // 负载均衡分区：优先按key哈希，没有key时按消息内容哈希
+        final byte[] hashBytes = keyBytes != null ? keyBytes : valueBytes;
+        if (hashBytes == null) {
+            return Utils.toPositive(roundRobin.getAndIncrement()) % numPartitions;
         }
+        return Utils.toPositive(Utils.murmur2(hashBytes)) % numPartitions;
+    }
 
-        // 负载均衡分区
-        return Math.abs(message.hashCode() % numPartitions);
+    private int partitionCount(String topic, Cluster cluster) {
+        if (cluster != cachedCluster) {
+            partitionCounts.clear();
+            cachedCluster = cluster;
+        }
+        Integer count = partitionCounts.get(topic);
+        if (count == null) {
+            count = cluster.partitionsForTopic(topic).size();
+            partitionCounts.put(topic, count);
+        }
+        return count;
+    }
+
+    public PartitionRouteTable getRouteTable() {
+        final PartitionRouteTable dynamicTable = PartitionRouteRegistry.current();
+        return dynamicTable != null ? dynamicTable : routeTable;
     }
 
     @Override
@@ -42,7 +107,20 @@ public class MainCustomPartitioner implements Partitioner {
 
     @Override
     public void configure(Map<String, ?> configs) {
-        //
+        final Object routes = configs.get(ROUTES_CONFIG);
+        if (routes != null) {
+            routeTable = PartitionRouteTable.parse(String.valueOf(routes));
+        }
+        log.info("==>>>分区路由表: {}", routeTable);
+        ProducerTrafficStats.INSTANCE.configure(
+                Boolean.parseBoolean(config(configs, STATS_ENABLED_CONFIG, "true")),
+                Integer.parseInt(config(configs, STATS_SKETCH_WIDTH_CONFIG, "4096")),
+                Integer.parseInt(config(configs, STATS_TOP_K_CONFIG, "20")));
+    }
+
+    private static String config(Map<String, ?> configs, String key, String defaultValue) {
+        final Object value = configs.get(key);
+        return value == null ? defaultValue : String.valueOf(value).trim();
     }
 
-}
\ No newline at end of file
+}
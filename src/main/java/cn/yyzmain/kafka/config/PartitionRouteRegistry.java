@@ -0,0 +1,30 @@
+package cn.yyzmain.kafka.config;
+
+/**
+ * 动态分区路由表的发布点
+ * <p>
+ * 分区器实例由kafka producer反射创建，不在spring容器内，因此通过静态volatile引用发布路由快照；
+ * 更新时整体替换不可变的 {@link PartitionRouteTable}，分区器读取时无锁
+ */
+public final class PartitionRouteRegistry {
+
+    private static volatile PartitionRouteTable dynamicTable;
+
+    private PartitionRouteRegistry() {
+    }
+
+    /**
+     * 当前动态路由表，未发布时为null（分区器使用producer配置中的路由表）
+     */
+    public static PartitionRouteTable current() {
+        return dynamicTable;
+    }
+
+    public static void publish(PartitionRouteTable table) {
+        dynamicTable = table;
+    }
+
+    public static void clear() {
+        dynamicTable = null;
+    }
+}
@@ -0,0 +1,107 @@
+package cn.yyzmain.kafka.config;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 分区路由表：消息前缀 -> 分区，不可变
+ * <p>
+ * 配置格式：{@code a-:0,b-:1,c-:2}，前缀较长的优先匹配
+ */
+public final class PartitionRouteTable {
+
+    public static final PartitionRouteTable EMPTY = new PartitionRouteTable(new byte[0][], new int[0]);
+
+    private final byte[][] prefixes;
+
+    private final int[] partitions;
+
+    private PartitionRouteTable(byte[][] prefixes, int[] partitions) {
+        this.prefixes = prefixes;
+        this.partitions = partitions;
+    }
+
+    /**
+     * 解析路由配置
+     *
+     * @throws IllegalArgumentException 配置格式错误
+     */
+    public static PartitionRouteTable parse(String routes) {
+        if (StringUtils.isBlank(routes)) {
+            return EMPTY;
+        }
+        final List<String[]> entries = new ArrayList<>();
+        for (String route : StringUtils.split(routes, ",;\n")) {
+            if (StringUtils.isBlank(route)) {
+                continue;
+            }
+            final int split = route.lastIndexOf(':');
+            if (split <= 0) {
+                throw new IllegalArgumentException("invalid partition route: " + route);
+            }
+            final String prefix = route.substring(0, split).trim();
+            final String partition = route.substring(split + 1).trim();
+            if (prefix.isEmpty() || !StringUtils.isNumeric(partition)) {
+                throw new IllegalArgumentException("invalid partition route: " + route);
+            }
+            entries.add(new String[]{prefix, partition});
+        }
+        entries.sort(Comparator.comparingInt((String[] e) -> e[0].length()).reversed());
+        final byte[][] prefixes = new byte[entries.size()][];
+        final int[] partitions = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            prefixes[i] = entries.get(i)[0].getBytes(StandardCharsets.UTF_8);
+            partitions[i] = Integer.parseInt(entries.get(i)[1]);
+        }
+        return new PartitionRouteTable(prefixes, partitions);
+    }
+
+    /**
+     * 按前缀匹配分区，直接比较字节不做任何对象分配
+     *
+     * @return 匹配到的分区，未匹配返回-1
+     */
+    public int match(byte[] value) {
+        if (value == null) {
+            return -1;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (startsWith(value, prefixes[i])) {
+                return partitions[i];
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return prefixes.length;
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        if (value.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (value[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < prefixes.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(new String(prefixes[i], StandardCharsets.UTF_8)).append(':').append(partitions[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package cn.yyzmain.kafka.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * producer批量发送档位
+ */
+public enum ProducerProfile {
+
+    /**
+     * 低延迟：不等待凑批，小批次
+     */
+    LATENCY,
+    /**
+     * 高吞吐：等待凑批，大批次并压缩
+     */
+    THROUGHPUT;
+
+    /**
+     * 在基础配置上叠加档位的批量参数
+     *
+     * @param base        spring.kafka.producer 的基础配置
+     * @param lingerMs    linger.ms
+     * @param batchSize   batch.size
+     * @param compression 压缩算法：none/gzip/snappy/lz4/zstd
+     */
+    public static Map<String, Object> apply(Map<String, Object> base, int lingerMs, int batchSize, String compression) {
+        final Map<String, Object> props = new HashMap<>(base);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        return props;
+    }
+}
@@ -0,0 +1,88 @@
+package cn.yyzmain.kafka.config;
+
+import cn.yyzmain.kafka.product.AdaptiveProducerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * producer档位配置：latency / throughput 两个命名的ProducerFactory，
+ * 默认KafkaTemplate使用的工厂按 app.kafka.producer.profile 固定档位或自适应切换（adaptive）
+ */
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+public class ProducerProfileConfig {
+
+    public static final String ADAPTIVE = "adaptive";
+
+    private final KafkaProperties kafkaProperties;
+
+    /**
+     * latency / throughput / adaptive
+     */
+    @Value("${app.kafka.producer.profile:latency}")
+    private String profile;
+
+    @Value("${app.kafka.producer.latency.linger-ms:0}")
+    private int latencyLingerMs;
+    @Value("${app.kafka.producer.latency.batch-size:16384}")
+    private int latencyBatchSize;
+    @Value("${app.kafka.producer.latency.compression:none}")
+    private String latencyCompression;
+
+    @Value("${app.kafka.producer.throughput.linger-ms:20}")
+    private int throughputLingerMs;
+    @Value("${app.kafka.producer.throughput.batch-size:262144}")
+    private int throughputBatchSize;
+    @Value("${app.kafka.producer.throughput.compression:lz4}")
+    private String throughputCompression;
+
+    @Bean
+    public ProducerFactory<String, String> latencyProducerFactory() {
+        return new DefaultKafkaProducerFactory<>(ProducerProfile.apply(kafkaProperties.buildProducerProperties(),
+                latencyLingerMs, latencyBatchSize, latencyCompression));
+    }
+
+    @Bean
+    public ProducerFactory<String, String> throughputProducerFactory() {
+        return new DefaultKafkaProducerFactory<>(ProducerProfile.apply(kafkaProperties.buildProducerProperties(),
+                throughputLingerMs, throughputBatchSize, throughputCompression));
+    }
+
+    @Bean
+    @Primary
+    public AdaptiveProducerFactory<String, String> kafkaProducerFactory() {
+        final Map<ProducerProfile, ProducerFactory<String, String>> delegates = new EnumMap<>(ProducerProfile.class);
+        delegates.put(ProducerProfile.LATENCY, latencyProducerFactory());
+        delegates.put(ProducerProfile.THROUGHPUT, throughputProducerFactory());
+        final ProducerProfile initial = ADAPTIVE.equalsIgnoreCase(profile)
+                ? ProducerProfile.LATENCY : ProducerProfile.valueOf(profile.toUpperCase());
+        log.info("==>>>producer档位: {}, 初始: {}", profile, initial);
+        return new AdaptiveProducerFactory<>(delegates, initial);
+    }
+
+    @Bean
+    @Primary
+    public KafkaTemplate<String, String> kafkaTemplate() {
+        return new KafkaTemplate<>(kafkaProducerFactory());
+    }
+
+    /**
+     * 档位对应的batch.size，用于计算批次填充率
+     */
+    public int batchSize(ProducerProfile producerProfile) {
+        return producerProfile == ProducerProfile.THROUGHPUT ? throughputBatchSize : latencyBatchSize;
+    }
+
+}
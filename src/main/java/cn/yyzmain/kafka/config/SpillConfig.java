@@ -0,0 +1,37 @@
+package cn.yyzmain.kafka.config;
+
+import cn.yyzmain.kafka.spill.SpillJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 发送失败消息本地暂存配置
+ */
+@Configuration
+public class SpillConfig {
+
+    @Value("${app.kafka.spill.dir:./data/spill}")
+    private String dir;
+    /**
+     * 单个段文件大小
+     */
+    @Value("${app.kafka.spill.segment-bytes:67108864}")
+    private int segmentBytes;
+    /**
+     * 暂存日志最大占用空间，超出后新的失败消息将被丢弃
+     */
+    @Value("${app.kafka.spill.max-bytes:2147483648}")
+    private long maxBytes;
+
+    @Bean(destroyMethod = "close")
+    public SpillJournal spillJournal() throws IOException {
+        final SpillJournal journal = new SpillJournal(new File(dir), segmentBytes, maxBytes);
+        journal.open();
+        return journal;
+    }
+
+}
@@ -0,0 +1,34 @@
+package cn.yyzmain.kafka.config;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.kafka.serialization.StudentSerializer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * Student 事件发送配置：key为studentId，value为紧凑二进制
+ */
+@Configuration
+@RequiredArgsConstructor
+public class StudentKafkaConfig {
+
+    private final KafkaProperties kafkaProperties;
+
+    @Bean
+    public ProducerFactory<String, Student> studentProducerFactory() {
+        return new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(),
+                new StringSerializer(), new StudentSerializer());
+    }
+
+    @Bean
+    public KafkaTemplate<String, Student> studentKafkaTemplate() {
+        return new KafkaTemplate<>(studentProducerFactory());
+    }
+
+}
@@ -0,0 +1,94 @@
+package cn.yyzmain.kafka.controller;
+
+import cn.yyzmain.kafka.entity.ReplayProgress;
+import cn.yyzmain.kafka.listen.ListenerConcurrencyManager;
+import cn.yyzmain.kafka.listen.ReplayManager;
+import cn.yyzmain.result.MainResult;
+import cn.yyzmain.result.MainResultGenerator;
+import cn.yyzmain.result.ResultCode;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/mainKafka/listener")
+@Api(tags = "kafka消费端管理")
+@Slf4j
+@RequiredArgsConstructor
+public class ListenerController {
+
+    private final ListenerConcurrencyManager listenerConcurrencyManager;
+
+    private final ReplayManager replayManager;
+
+    @ApiOperation("当前消费并发数")
+    @PostMapping("/concurrency")
+    public MainResult<Integer> concurrency() {
+        return MainResultGenerator.createOkResult(listenerConcurrencyManager.getConcurrency());
+    }
+
+    @ApiOperation("调整消费并发数（会触发一次重平衡）")
+    @PostMapping("/concurrency/resize")
+    public MainResult<Integer> resize(Integer concurrency) {
+        if (concurrency == null || concurrency <= 0) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        return MainResultGenerator.createOkResult(listenerConcurrencyManager.resize(concurrency));
+    }
+
+    @ApiOperation("按主题当前分区数调整消费并发数")
+    @PostMapping("/concurrency/auto")
+    public MainResult<Integer> auto() {
+        final int concurrency = listenerConcurrencyManager.resizeToPartitions();
+        if (concurrency < 0) {
+            return MainResultGenerator.createFailResult("读取主题分区数失败");
+        }
+        return MainResultGenerator.createOkResult(concurrency);
+    }
+
+    /**
+     * @param timestamp  重放起始时间戳：ms
+     * @param partitions 分区号，逗号分隔，为空表示全部分区
+     * @param rate       限速：条/秒，为空使用默认值
+     */
+    @ApiOperation("按时间戳重放消费")
+    @PostMapping("/replay/start")
+    public MainResult<ReplayProgress> replayStart(Long timestamp, String partitions, Long rate) {
+        if (timestamp == null || timestamp < 0) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        final List<Integer> partitionList = new ArrayList<>();
+        try {
+            for (String partition : StringUtils.split(StringUtils.defaultString(partitions), ',')) {
+                partitionList.add(Integer.parseInt(partition.trim()));
+            }
+            return MainResultGenerator.createOkResult(replayManager.start(timestamp, partitionList, rate));
+        } catch (IllegalArgumentException e) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), e.getMessage());
+        } catch (IllegalStateException e) {
+            return MainResultGenerator.createFailResult(e.getMessage());
+        }
+    }
+
+    @ApiOperation("重放进度")
+    @PostMapping("/replay/progress")
+    public MainResult<ReplayProgress> replayProgress() {
+        return MainResultGenerator.createOkResult(replayManager.progress());
+    }
+
+    @ApiOperation("取消重放（已定位的分区继续正常消费）")
+    @PostMapping("/replay/cancel")
+    public MainResult<ReplayProgress> replayCancel() {
+        replayManager.cancel();
+        return MainResultGenerator.createOkResult(replayManager.progress());
+    }
+
+}
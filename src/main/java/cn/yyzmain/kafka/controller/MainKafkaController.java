@@ -1,16 +1,30 @@
 package cn.yyzmain.kafka.controller;
 
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.kafka.entity.BatchSendResult;
 import cn.yyzmain.kafka.product.MainProduct;
 import cn.yyzmain.result.MainResult;
 import cn.yyzmain.result.MainResultGenerator;
+import cn.yyzmain.result.ResultCode;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/mainKafka")
 @Api(tags = "kafka")
@@ -34,4 +48,82 @@ public class MainKafkaController {
         return MainResultGenerator.createOkResult();
     }
 
+    @ApiOperation("发送数据-异步，broker确认后才返回，不占用servlet线程等待")
+    @PostMapping("/sendAsync")
+    public CompletableFuture<MainResult<String>> sendMessageAsync(String topic, String msg) {
+        return mainProduct.sendMessageAsync(topic, msg).handle((sendResult, throwable) -> {
+            if (throwable == null) {
+                return MainResultGenerator.createOkResult(String.valueOf(sendResult.getRecordMetadata()));
+            }
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if (cause instanceof RejectedExecutionException) {
+                return MainResultGenerator.createFailResult(ResultCode.LIMIT_ERROR.getCode(), ResultCode.LIMIT_ERROR.getMsg());
+            }
+            log.error("==>>>异步消息发送失败!", cause);
+            return MainResultGenerator.createFailResult(cause.getMessage());
+        });
+    }
+
+    @ApiOperation("发送Student事件（二进制编码，student落库只接受JSON，不消费此格式）")
+    @PostMapping("/sendStudent")
+    public CompletableFuture<MainResult<String>> sendStudent(String topic, @RequestBody Student student) {
+        return mainProduct.sendStudent(topic, student).handle((sendResult, throwable) -> {
+            if (throwable == null) {
+                return MainResultGenerator.createOkResult(String.valueOf(sendResult.getRecordMetadata()));
+            }
+            log.error("==>>>Student事件发送失败!", throwable);
+            return MainResultGenerator.createFailResult(throwable.getMessage());
+        });
+    }
+
+    @ApiOperation("批量发送数据，请求体为JSON数组或NDJSON（每行一条），失败消息写入本地暂存后重放")
+    @PostMapping("/sendBatch")
+    public MainResult<BatchSendResult> sendBatch(String topic, @RequestBody String body) {
+        if (StringUtils.isBlank(topic) || StringUtils.isBlank(body)) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        final List<String> msgs;
+        try {
+            msgs = parseBatchBody(body);
+        } catch (JsonParseException | IllegalStateException e) {
+            log.warn("批量发送请求体解析失败: {}", e.getMessage());
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        if (msgs.isEmpty()) {
+            return MainResultGenerator.createFailResult(ResultCode.PARAMS_ERROR.getCode(), ResultCode.PARAMS_ERROR.getMsg());
+        }
+        return MainResultGenerator.createOkResult(mainProduct.sendBatch(topic, msgs));
+    }
+
+    /**
+     * 解析批量请求体：以'['开头按JSON数组解析，否则按NDJSON逐行解析；
+     * 字符串元素取其内容，其余元素保留原始JSON文本
+     */
+    private List<String> parseBatchBody(String body) {
+        final String trimmed = body.trim();
+        final List<String> msgs = new ArrayList<>();
+        if (trimmed.startsWith("[")) {
+            for (JsonElement element : JsonParser.parseString(trimmed).getAsJsonArray()) {
+                msgs.add(toMessage(element));
+            }
+            return msgs;
+        }
+        for (String line : StringUtils.split(trimmed, "\r\n")) {
+            final String msg = line.trim();
+            if (msg.isEmpty()) {
+                continue;
+            }
+            msgs.add(msg.startsWith("\"") ? toMessage(JsonParser.parseString(msg)) : msg);
+        }
+        return msgs;
+    }
+
+    private String toMessage(JsonElement element) {
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            return element.getAsString();
+        }
+        return element.toString();
+    }
+
 }
@@ -0,0 +1,43 @@
+package cn.yyzmain.kafka.controller;
+
+import cn.yyzmain.kafka.entity.HotKeyStat;
+import cn.yyzmain.kafka.entity.TopicTrafficStat;
+import cn.yyzmain.kafka.metrics.ProducerTrafficStats;
+import cn.yyzmain.result.MainResult;
+import cn.yyzmain.result.MainResultGenerator;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/mainKafka/stats")
+@Api(tags = "kafka生产端统计")
+@Slf4j
+public class ProducerStatsController {
+
+    @ApiOperation("各主题分区流量分布")
+    @PostMapping("/partitions")
+    public MainResult<List<TopicTrafficStat>> partitions() {
+        return MainResultGenerator.createOkResult(ProducerTrafficStats.INSTANCE.partitions());
+    }
+
+    @ApiOperation("主题热点key/前缀")
+    @PostMapping("/hotKeys")
+    public MainResult<List<HotKeyStat>> hotKeys(String topic) {
+        return MainResultGenerator.createOkResult(ProducerTrafficStats.INSTANCE.hotKeys(topic));
+    }
+
+    @ApiOperation("清空统计")
+    @PostMapping("/reset")
+    public MainResult<String> reset() {
+        ProducerTrafficStats.INSTANCE.reset();
+        log.info("==>>>生产端分区统计已清空");
+        return MainResultGenerator.createOkResult();
+    }
+
+}
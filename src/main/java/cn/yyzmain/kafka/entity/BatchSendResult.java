@@ -0,0 +1,74 @@
+package cn.yyzmain.kafka.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量发送结果汇总
+ */
+@Data
+@Accessors(chain = true)
+public class BatchSendResult {
+
+    /**
+     * 提交的消息总数
+     */
+    private int total;
+    /**
+     * 发送成功数
+     */
+    private int success;
+    /**
+     * 发送失败、已写入本地暂存数：由SpillReplayer重放，调用方不要重发
+     */
+    private int spilled;
+    /**
+     * 超时未确认数：原发送仍可能成功，最终失败时写入本地暂存，调用方不要重发
+     */
+    private int unconfirmed;
+    /**
+     * 发送失败且暂存失败（消息丢失）数，调用方可重发
+     */
+    private int failed;
+    /**
+     * 耗时：ms
+     */
+    private long costMs;
+    /**
+     * 各分区发送情况
+     */
+    private List<PartitionSummary> partitions = new ArrayList<>();
+    /**
+     * 丢失消息的明细（最多保留前若干条）
+     */
+    private List<Failure> failures = new ArrayList<>();
+
+    @Data
+    @Accessors(chain = true)
+    public static class PartitionSummary {
+
+        private int partition;
+
+        private int count;
+
+        private long minOffset = Long.MAX_VALUE;
+
+        private long maxOffset = -1;
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Failure {
+
+        /**
+         * 消息在请求体中的下标
+         */
+        private int index;
+
+        private String error;
+    }
+
+}
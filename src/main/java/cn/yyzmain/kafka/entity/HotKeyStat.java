@@ -0,0 +1,21 @@
+package cn.yyzmain.kafka.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 热点key/前缀
+ */
+@Data
+@Accessors(chain = true)
+public class HotKeyStat {
+
+    private String key;
+
+    /**
+     * count-min sketch估算次数（只会偏大）
+     */
+    private long estimate;
+
+    private double share;
+}
@@ -0,0 +1,61 @@
+package cn.yyzmain.kafka.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 按时间戳重放的进度
+ */
+@Data
+@Accessors(chain = true)
+public class ReplayProgress {
+
+    /**
+     * 重放起始时间戳：ms，没有重放任务时为null
+     */
+    private Long timestamp;
+
+    /**
+     * 重放限速：条/秒
+     */
+    private long ratePerSecond;
+
+    /**
+     * 已重放条数 / 目标条数（各分区 目标结束offset - 起始offset 之和）
+     */
+    private long replayed;
+
+    private long target;
+
+    private boolean finished;
+
+    /**
+     * 还未被消费线程定位的分区（未分配到本实例或尚未轮到处理）
+     */
+    private List<Integer> waitingPartitions;
+
+    private List<PartitionProgress> partitions;
+
+    @Data
+    @Accessors(chain = true)
+    public static class PartitionProgress {
+
+        private int partition;
+
+        private long startOffset;
+
+        /**
+         * 发起重放时分区的结束offset，之后的消息按正常消费处理
+         */
+        private long endOffset;
+
+        /**
+         * 已交给处理的下一个offset
+         */
+        private long position;
+
+        private boolean paused;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.yyzmain.kafka.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 主题发送流量分布
+ */
+@Data
+@Accessors(chain = true)
+public class TopicTrafficStat {
+
+    private String topic;
+
+    private long total;
+
+    /**
+     * 流量最大分区的占比，用于判断分区倾斜
+     */
+    private double maxShare;
+
+    private int maxPartition;
+
+    private List<PartitionCount> partitions = new ArrayList<>();
+
+    @Data
+    @Accessors(chain = true)
+    public static class PartitionCount {
+
+        private int partition;
+
+        private long count;
+
+        private double share;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.yyzmain.kafka.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 一个已关闭窗口内某个业务类别（消息前缀）的统计结果
+ */
+@Data
+@Accessors(chain = true)
+public class WindowAggregate {
+
+    public static final String TUMBLING = "tumbling";
+    public static final String SLIDING = "sliding";
+
+    /**
+     * tumbling / sliding
+     */
+    private String windowType;
+
+    /**
+     * 消息前缀，如 a-，没有前缀的归入 other
+     */
+    private String category;
+
+    /**
+     * 窗口起止（消息时间戳）：ms，左闭右开
+     */
+    private long windowStart;
+
+    private long windowEnd;
+
+    private long recordCount;
+
+    /**
+     * 窗口内平均每秒条数
+     */
+    private double ratePerSecond;
+}
@@ -0,0 +1,155 @@
+package cn.yyzmain.kafka.listen;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主监听容器（按消费模式为 mainListen 或 mainListenBytes）并发数管理
+ * <p>
+ * 启动时（容器启动之前）按主题分区数设置并发数，多出的消费线程只会空闲；
+ * 运行中可通过接口调整：停止容器（已处理完的offset在分区回收前提交）-> 修改并发数 -> 重新启动
+ */
+@Slf4j
+@Component
+public class ListenerConcurrencyManager implements SmartLifecycle {
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    private final KafkaAdmin kafkaAdmin;
+
+    @Value("${app.main.yyzmain:yyzmain}")
+    private String topic;
+    /**
+     * 启动时按分区数自动设置并发数
+     */
+    @Value("${app.kafka.concurrency.auto:true}")
+    private boolean auto;
+    /**
+     * 并发数上限
+     */
+    @Value("${app.kafka.concurrency.max:16}")
+    private int maxConcurrency;
+
+    @Value("${app.kafka.consumer.mode:string}")
+    private String consumerMode;
+
+    private volatile boolean running;
+
+    public ListenerConcurrencyManager(KafkaListenerEndpointRegistry registry, KafkaAdmin kafkaAdmin) {
+        this.registry = registry;
+        this.kafkaAdmin = kafkaAdmin;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!auto) {
+            return;
+        }
+        final int partitions = partitionCount();
+        if (partitions > 0) {
+            applyConcurrency(partitions);
+        }
+    }
+
+    /**
+     * 重新读取分区数并调整并发数（主题扩分区后调用）
+     *
+     * @return 调整后的并发数，读取分区数失败返回-1
+     */
+    public int resizeToPartitions() {
+        final int partitions = partitionCount();
+        return partitions > 0 ? resize(partitions) : -1;
+    }
+
+    /**
+     * 调整运行中容器的并发数
+     *
+     * @return 调整后的并发数
+     */
+    public synchronized int resize(int concurrency) {
+        final ConcurrentMessageListenerContainer<?, ?> container = container();
+        final int target = Math.max(1, Math.min(concurrency, maxConcurrency));
+        if (target == container.getConcurrency()) {
+            return target;
+        }
+        final boolean wasRunning = container.isRunning();
+        if (wasRunning) {
+            container.stop();
+        }
+        log.info("==>>>监听容器{}并发数: {} -> {}", listenerId(), container.getConcurrency(), target);
+        container.setConcurrency(target);
+        if (wasRunning) {
+            container.start();
+        }
+        return target;
+    }
+
+    public int getConcurrency() {
+        return container().getConcurrency();
+    }
+
+    private void applyConcurrency(int partitions) {
+        final ConcurrentMessageListenerContainer<?, ?> container = container();
+        final int target = Math.max(1, Math.min(partitions, maxConcurrency));
+        log.info("==>>>主题{}分区数:{}，监听容器并发数: {} -> {}", topic, partitions, container.getConcurrency(), target);
+        container.setConcurrency(target);
+    }
+
+    /**
+     * 当前消费模式对应的主监听容器
+     */
+    private String listenerId() {
+        return "bytes".equals(consumerMode) ? MainListen.BYTES_LISTENER_ID : MainListen.LISTENER_ID;
+    }
+
+    private ConcurrentMessageListenerContainer<?, ?> container() {
+        final MessageListenerContainer container = registry.getListenerContainer(listenerId());
+        if (!(container instanceof ConcurrentMessageListenerContainer)) {
+            throw new IllegalStateException("listener container not found: " + listenerId());
+        }
+        return (ConcurrentMessageListenerContainer<?, ?>) container;
+    }
+
+    int partitionCount() {
+        try (AdminClient adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            final TopicDescription description = adminClient.describeTopics(Collections.singleton(topic))
+                    .all().get(30, TimeUnit.SECONDS).get(topic);
+            return description.partitions().size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("==>>>读取主题{}分区数失败，保持配置的并发数", topic, e);
+        }
+        return -1;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在监听容器（phase为Integer.MAX_VALUE-100）之前启动
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+}
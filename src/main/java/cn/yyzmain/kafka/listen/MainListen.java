@@ -1,12 +1,30 @@
 package cn.yyzmain.kafka.listen;
 
+import cn.yyzmain.kafka.aggregate.WindowAggregator;
+import cn.yyzmain.kafka.metrics.ListenerMetrics;
+import cn.yyzmain.kafka.process.DuplicateFilter;
+import cn.yyzmain.kafka.process.FailedRecord;
+import cn.yyzmain.kafka.process.FlowController;
+import cn.yyzmain.kafka.process.LaneScheduler;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import cn.yyzmain.kafka.process.RawRecordFilter;
+import cn.yyzmain.kafka.process.RecordHandler;
+import cn.yyzmain.kafka.process.ShardedBatchProcessor;
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -14,17 +32,131 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MainListen {
 
+    public static final String LISTENER_ID = "mainListen";
 
-    @KafkaListener(topics = "${app.main.yyzmain:yyzmain}", containerFactory = "batchFactory")
-    public void handleReceiveDataTopic(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
-        try {
+    public static final String BYTES_LISTENER_ID = "mainListenBytes";
+
+    private final ObjectProvider<TxForwarder> txForwarderProvider;
+
+    private final ShardedBatchProcessor shardedBatchProcessor;
+
+    private final RecordHandler recordHandler;
+
+    private final OffsetTracker offsetTracker;
+
+    private final RetryPublisher retryPublisher;
+
+    private final FlowController flowController;
+
+    private final DuplicateFilter duplicateFilter;
+
+    private final WindowAggregator windowAggregator;
+
+    private final ReplayManager replayManager;
+
+    private final RawRecordFilter rawRecordFilter;
+
+    private final LaneScheduler laneScheduler;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.main.yyzmain:yyzmain}")
+    private String topic;
+
+    private ListenerMetrics metrics;
+
+    @PostConstruct
+    public void init() {
+        metrics = new ListenerMetrics(meterRegistry, LISTENER_ID);
+        //消息在OffsetTracker中标记完成时才记为已处理：攒批落库的消息落库后才算，回退重新消费的消息不会被记录
+        //只登记主监听的主题，重试主题的消息不占用去重容量
+        offsetTracker.addCompletionListener(topic, duplicateFilter::markProcessed);
+    }
+
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "${app.main.yyzmain:yyzmain}", containerFactory = "batchFactory",
+            autoStartup = "#{'${app.kafka.consumer.mode:string}' != 'bytes'}")
+    public void handleReceiveDataTopic(List<ConsumerRecord<String, String>> records, Acknowledgment ack,
+                                       Consumer<?, ?> consumer) {
+        final TxForwarder txForwarder = txForwarderProvider.getIfAvailable();
+        if (txForwarder != null) {
+            //事务模式：转发与offset提交在同一个kafka事务中，异常直接抛出由容器回滚事务并重新投递
+            //事务producer绑定在消费线程上，这里不做分片并行
             records.forEach(v -> log.info("消费到数据: {}", v));
-        } catch (Exception e) {
-            log.error("处理异常，{}", e.getMessage(), e);
-        } finally {
-            //消息处理完毕，手动提交
+            txForwarder.forward(records);
             ack.acknowledge();
+            return;
+        }
+        //非事务模式不再逐批ack，由OffsetTracker只提交连续处理完成的offset
+        process(records, Collections.emptyList(), consumer);
+    }
+
+    /**
+     * bytes模式：按原始字节做前缀、header过滤，只解码通过的消息，之后与字符串模式处理相同
+     */
+    @KafkaListener(id = BYTES_LISTENER_ID, idIsGroup = false, topics = "${app.main.yyzmain:yyzmain}",
+            containerFactory = "bytesBatchFactory", autoStartup = "#{'${app.kafka.consumer.mode:string}' == 'bytes'}")
+    public void handleReceiveBytes(List<ConsumerRecord<byte[], byte[]>> records, Consumer<?, ?> consumer) {
+        final List<ConsumerRecord<byte[], byte[]>> filtered = new ArrayList<>();
+        process(rawRecordFilter.decode(records, filtered), filtered, consumer);
+    }
+
+    /**
+     * @param filtered 解码前被过滤掉、不做处理的消息
+     */
+    private void process(List<ConsumerRecord<String, String>> records, List<? extends ConsumerRecord<?, ?>> filtered,
+                         Consumer<?, ?> consumer) {
+        //按时间戳重放：定位待重放分区并丢弃这些分区本次已拉取的消息，重放区间内的消息按限速截取
+        //按处理耗时截取本次能在拉取间隔内处理完的部分，其余回退到下次拉取
+        final List<ConsumerRecord<String, String>> polled = replayManager.beforeBatch(consumer, records);
+        final List<ConsumerRecord<String, String>> admitted = replayManager.admit(consumer, flowController.admit(consumer, polled));
+        //丢弃重平衡、回退后重复投递的消息（重放的消息除外）；未登记的offset按空洞处理，不影响提交
+        final List<ConsumerRecord<String, String>> fresh = duplicateFilter.filter(admitted,
+                replayManager.isActive() ? replayManager::isReplayed : null);
+        offsetTracker.register(fresh);
+        final long start = System.nanoTime();
+        List<FailedRecord> failed = Collections.emptyList();
+        List<ConsumerRecord<String, String>> rewound = Collections.emptyList();
+        final RecordHandler handler = recordHandler.completesAsync()
+                ? recordHandler
+                : record -> {
+                    recordHandler.handle(record);
+                    offsetTracker.complete(record);
+                };
+        try {
+            if (laneScheduler.isEnabled()) {
+                //按优先级通道派发到各通道自己的线程池，不等本批次处理完就继续拉取；失败消息由通道线程转入重试主题
+                laneScheduler.dispatch(fresh, handler);
+            } else {
+                //按key分片并行处理，同一key保持顺序；单条失败已在分片内记录日志
+                failed = shardedBatchProcessor.process(fresh, handler);
+            }
+            if (!failed.isEmpty()) {
+                log.warn("==>>>本批次{}条消息，处理失败{}条", fresh.size(), failed.size());
+                //失败消息转入重试主题，不阻塞当前分区；发布失败的回退重新消费
+                rewound = retryPublisher.publish(failed);
+                if (!rewound.isEmpty()) {
+                    offsetTracker.rewind(consumer, rewound);
+                }
+            }
+        } catch (InterruptedException e) {
+            //应用关闭中，未完成的消息不会提交，重启后重新消费
+            Thread.currentThread().interrupt();
+            log.warn("==>>>批次处理被中断");
+            rewound = fresh;
+        }
+        //回退重新消费的消息不计入窗口统计
+        windowAggregator.add(fresh, rewound);
+        final long elapsedNanos = System.nanoTime() - start;
+        metrics.recordBatch(fresh.size(), elapsedNanos, failed.size());
+        //未完成消息过多时暂停拉取
+        flowController.afterBatch(consumer, fresh.size(), elapsedNanos);
+        //高优先级通道积压时先暂停低优先级通道的分区
+        laneScheduler.checkBackpressure(consumer);
+        //被过滤的消息视为已完成，分区内全部被过滤时offset也能推进；在所有回退之后进行，回退位置之后的不跳过
+        if (!filtered.isEmpty()) {
+            offsetTracker.skip(consumer, filtered);
         }
+        offsetTracker.commitIfDue(consumer);
     }
 
 }
@@ -0,0 +1,13 @@
+package cn.yyzmain.kafka.listen;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 事务转发模式下的消息转换，返回null表示该条消息不转发
+ */
+@FunctionalInterface
+public interface MessageTransformer {
+
+    String transform(ConsumerRecord<String, String> record);
+
+}
@@ -0,0 +1,347 @@
+package cn.yyzmain.kafka.listen;
+
+import cn.yyzmain.kafka.entity.ReplayProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 主监听按时间戳重放，替代手工用命令行重置offset
+ * <p>
+ * 发起后由各消费线程（KafkaConsumer非线程安全）在处理批次前或空闲时，对自己分配到的目标分区
+ * 用 offsetsForTimes 定位并 seek，同时记下当时的结束offset作为重放终点；
+ * 重放区间内的消息按令牌桶限速，超出的部分回退并暂停该分区，令牌补充后恢复，其他分区的实时消息不受影响。
+ * 已提交的offset不会回退，重放中途重启或重平衡时未完成的分区不再继续重放
+ */
+@Slf4j
+@Component
+public class ReplayManager {
+
+    private final ListenerConcurrencyManager listenerConcurrencyManager;
+
+    @Value("${app.main.yyzmain:yyzmain}")
+    private String topic;
+    /**
+     * 默认限速：条/秒
+     */
+    @Value("${app.kafka.replay.rate:1000}")
+    private long defaultRate;
+
+    private volatile Replay replay;
+
+    /**
+     * 因限速暂停的分区
+     */
+    private final Set<TopicPartition> throttled = ConcurrentHashMap.newKeySet();
+
+    public ReplayManager(ListenerConcurrencyManager listenerConcurrencyManager) {
+        this.listenerConcurrencyManager = listenerConcurrencyManager;
+    }
+
+    /**
+     * 发起重放，替换正在进行的重放
+     *
+     * @param partitions 为空表示全部分区
+     * @param rate       为空使用默认限速
+     */
+    public synchronized ReplayProgress start(long timestamp, Collection<Integer> partitions, Long rate) {
+        final int partitionCount = listenerConcurrencyManager.partitionCount();
+        if (partitionCount <= 0) {
+            throw new IllegalStateException("读取主题分区数失败");
+        }
+        final Set<TopicPartition> targets = new HashSet<>();
+        if (partitions == null || partitions.isEmpty()) {
+            for (int i = 0; i < partitionCount; i++) {
+                targets.add(new TopicPartition(topic, i));
+            }
+        } else {
+            for (Integer partition : partitions) {
+                if (partition == null || partition < 0 || partition >= partitionCount) {
+                    throw new IllegalArgumentException("分区不存在: " + partition);
+                }
+                targets.add(new TopicPartition(topic, partition));
+            }
+        }
+        final long ratePerSecond = rate == null ? defaultRate : rate;
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("限速必须大于0: " + ratePerSecond);
+        }
+        replay = new Replay(timestamp, targets, ratePerSecond);
+        log.info("==>>>发起重放,timestamp:{}, partitions:{}, rate:{}/s", timestamp, targets, ratePerSecond);
+        return progress();
+    }
+
+    public synchronized void cancel() {
+        if (replay != null) {
+            log.info("==>>>取消重放,timestamp:{}", replay.timestamp);
+        }
+        replay = null;
+    }
+
+    /**
+     * 处理批次前在消费线程上调用：定位待重放分区，并丢弃本批次中这些分区已拉取的消息。
+     * 这些分区在本批次中不会再被回退（流控截取、限速、重试发布失败）seek 到实时位置，重放起点不会被覆盖
+     */
+    public List<ConsumerRecord<String, String>> beforeBatch(Consumer<?, ?> consumer, List<ConsumerRecord<String, String>> records) {
+        final Set<TopicPartition> sought = beforeBatch(consumer);
+        if (sought.isEmpty() || records.isEmpty()) {
+            return records;
+        }
+        final List<ConsumerRecord<String, String>> kept = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            if (!sought.contains(new TopicPartition(record.topic(), record.partition()))) {
+                kept.add(record);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * 消费线程上调用：定位本消费者分配到的待重放分区，恢复令牌已补充的暂停分区
+     *
+     * @return 本次seek到重放起点的分区
+     */
+    public Set<TopicPartition> beforeBatch(Consumer<?, ?> consumer) {
+        final Replay current = replay;
+        resumeThrottled(consumer, current);
+        if (current == null) {
+            return Collections.emptySet();
+        }
+        final Set<TopicPartition> claimed = current.claim(consumer.assignment());
+        if (claimed.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<TopicPartition> sought = new HashSet<>();
+        try {
+            final Map<TopicPartition, Long> query = new HashMap<>();
+            claimed.forEach(tp -> query.put(tp, current.timestamp));
+            final Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(query);
+            final Map<TopicPartition, Long> ends = consumer.endOffsets(claimed);
+            for (TopicPartition tp : claimed) {
+                final OffsetAndTimestamp start = offsets.get(tp);
+                final long end = ends.get(tp);
+                if (start == null || start.offset() >= end) {
+                    log.info("==>>>分区{}在时间戳{}之后没有消息，无需重放", tp, current.timestamp);
+                    current.partitions.put(tp, new PartitionReplay(end, end));
+                    continue;
+                }
+                consumer.seek(tp, start.offset());
+                sought.add(tp);
+                current.partitions.put(tp, new PartitionReplay(start.offset(), end));
+                log.info("==>>>分区{}重放,offset:{} -> {}", tp, start.offset(), end);
+            }
+        } catch (Exception e) {
+            // 放回待定位集合，下次再试
+            current.unclaim(claimed);
+            log.error("==>>>重放定位失败,{}", claimed, e);
+        }
+        return sought;
+    }
+
+    /**
+     * 是否有正在重放的分区
+     */
+    public boolean isActive() {
+        final Replay current = replay;
+        return current != null && !current.partitions.isEmpty();
+    }
+
+    /**
+     * 是否是重放区间内的消息（重新处理，不做重复过滤）
+     */
+    public boolean isReplayed(ConsumerRecord<?, ?> record) {
+        final Replay current = replay;
+        if (current == null) {
+            return false;
+        }
+        final PartitionReplay partition = current.partitions.get(new TopicPartition(record.topic(), record.partition()));
+        return partition != null && record.offset() < partition.end;
+    }
+
+    /**
+     * 按限速截取重放分区中本次可处理的消息，超出部分回退位置并暂停该分区，非重放消息原样保留
+     */
+    public List<ConsumerRecord<String, String>> admit(Consumer<?, ?> consumer, List<ConsumerRecord<String, String>> records) {
+        final Replay current = replay;
+        if (current == null || current.partitions.isEmpty()) {
+            return records;
+        }
+        int replayed = 0;
+        for (ConsumerRecord<String, String> record : records) {
+            if (isReplayed(record)) {
+                replayed++;
+            }
+        }
+        if (replayed == 0) {
+            return records;
+        }
+        long granted = current.acquire(replayed);
+        final boolean all = granted == replayed;
+        final List<ConsumerRecord<String, String>> admitted = all ? records : new ArrayList<>(records.size());
+        final Map<TopicPartition, Long> rewind = new HashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            final TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            final PartitionReplay partition = current.partitions.get(tp);
+            final boolean inReplay = partition != null && record.offset() < partition.end;
+            if (!all) {
+                // 分区内一旦开始回退，其后的消息都要回退，保持分区内顺序
+                if (rewind.containsKey(tp) || (inReplay && granted <= 0)) {
+                    rewind.putIfAbsent(tp, record.offset());
+                    continue;
+                }
+                admitted.add(record);
+            }
+            if (inReplay) {
+                granted--;
+                partition.position = record.offset() + 1;
+            }
+        }
+        if (!rewind.isEmpty()) {
+            rewind.forEach(consumer::seek);
+            consumer.pause(rewind.keySet());
+            throttled.addAll(rewind.keySet());
+            log.debug("==>>>重放限速，暂停分区{}", rewind.keySet());
+        }
+        return admitted;
+    }
+
+    /**
+     * 暂停的分区收不到消息，由容器空闲事件检查恢复和定位
+     */
+    @EventListener(condition = "event.listenerId.startsWith('mainListen')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            beforeBatch(event.getConsumer());
+        }
+    }
+
+    private void resumeThrottled(Consumer<?, ?> consumer, Replay current) {
+        if (throttled.isEmpty() || (current != null && !current.hasTokens())) {
+            return;
+        }
+        final Set<TopicPartition> resumable = new HashSet<>(consumer.paused());
+        resumable.retainAll(throttled);
+        throttled.removeAll(consumer.assignment());
+        if (!resumable.isEmpty()) {
+            consumer.resume(resumable);
+        }
+    }
+
+    public ReplayProgress progress() {
+        final Replay current = replay;
+        final ReplayProgress progress = new ReplayProgress();
+        if (current == null) {
+            return progress.setFinished(true);
+        }
+        long replayed = 0;
+        long target = 0;
+        boolean finished;
+        final List<ReplayProgress.PartitionProgress> partitions = new ArrayList<>();
+        final List<Integer> waiting = new ArrayList<>();
+        synchronized (current) {
+            current.waiting.forEach(tp -> waiting.add(tp.partition()));
+            finished = waiting.isEmpty();
+        }
+        for (Map.Entry<TopicPartition, PartitionReplay> entry : current.partitions.entrySet()) {
+            final PartitionReplay partition = entry.getValue();
+            final long position = Math.max(partition.start, partition.position);
+            replayed += Math.min(position, partition.end) - partition.start;
+            target += partition.end - partition.start;
+            finished &= position >= partition.end;
+            partitions.add(new ReplayProgress.PartitionProgress().setPartition(entry.getKey().partition())
+                    .setStartOffset(partition.start).setEndOffset(partition.end).setPosition(position)
+                    .setPaused(throttled.contains(entry.getKey())));
+        }
+        partitions.sort(Comparator.comparingInt(ReplayProgress.PartitionProgress::getPartition));
+        waiting.sort(Comparator.naturalOrder());
+        return progress.setTimestamp(current.timestamp).setRatePerSecond(current.ratePerSecond)
+                .setReplayed(replayed).setTarget(target).setFinished(finished)
+                .setWaitingPartitions(waiting).setPartitions(partitions);
+    }
+
+    private static final class PartitionReplay {
+
+        private final long start;
+        private final long end;
+        private volatile long position;
+
+        PartitionReplay(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+    }
+
+    /**
+     * 一次重放任务，令牌桶容量为1秒的限速量
+     */
+    static final class Replay {
+
+        private final long timestamp;
+        private final long ratePerSecond;
+        private final Set<TopicPartition> waiting;
+        private final Map<TopicPartition, PartitionReplay> partitions = new ConcurrentHashMap<>();
+
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        Replay(long timestamp, Set<TopicPartition> targets, long ratePerSecond) {
+            this.timestamp = timestamp;
+            this.ratePerSecond = ratePerSecond;
+            this.waiting = new HashSet<>(targets);
+            this.tokens = ratePerSecond;
+        }
+
+        synchronized Set<TopicPartition> claim(Set<TopicPartition> assignment) {
+            if (waiting.isEmpty()) {
+                return Collections.emptySet();
+            }
+            final Set<TopicPartition> claimed = new HashSet<>(assignment);
+            claimed.retainAll(waiting);
+            waiting.removeAll(claimed);
+            return claimed;
+        }
+
+        synchronized void unclaim(Set<TopicPartition> claimed) {
+            waiting.addAll(claimed);
+        }
+
+        /**
+         * @return 实际获得的令牌数，不阻塞
+         */
+        synchronized long acquire(long requested) {
+            refill();
+            final long granted = Math.min(requested, (long) tokens);
+            tokens -= granted;
+            return granted;
+        }
+
+        synchronized boolean hasTokens() {
+            refill();
+            return tokens >= 1;
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefill) * ratePerSecond / 1e9);
+            lastRefill = now;
+        }
+    }
+}
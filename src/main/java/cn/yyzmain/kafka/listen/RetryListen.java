@@ -0,0 +1,130 @@
+package cn.yyzmain.kafka.listen;
+
+import cn.yyzmain.kafka.metrics.ListenerMetrics;
+import cn.yyzmain.kafka.process.FailedRecord;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import cn.yyzmain.kafka.process.RecordHandler;
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 重试主题监听：消息未到期时回退该分区位置并暂停分区，到期后恢复，不在消费线程上sleep
+ * <p>
+ * 同一重试主题内消息按到期时间顺序写入，遇到第一条未到期的消息即可暂停整个分区；
+ * 恢复检查在每次收到消息和容器空闲事件时进行，都在消费线程上
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RetryListen {
+
+    public static final String LISTENER_ID = "mainRetryListen";
+
+    private final RecordHandler recordHandler;
+
+    private final OffsetTracker offsetTracker;
+
+    private final RetryPublisher retryPublisher;
+
+    private final MeterRegistry meterRegistry;
+
+    private ListenerMetrics metrics;
+
+    /**
+     * 暂停中的分区 -> 恢复时间，只在消费线程上访问
+     */
+    private final Map<TopicPartition, Long> pausedUntil = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        metrics = new ListenerMetrics(meterRegistry, LISTENER_ID);
+    }
+
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "#{@retryTopics.retryTopicNames()}",
+            containerFactory = "retryFactory", autoStartup = "${app.kafka.retry.enabled:true}")
+    public void handleRetry(List<ConsumerRecord<String, String>> records, Consumer<?, ?> consumer) {
+        resumeDue(consumer);
+        offsetTracker.register(records);
+        final long now = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        int handled = 0;
+        final List<FailedRecord> failed = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records) {
+            final TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            if (pausedUntil.containsKey(tp)) {
+                // 本批次中该分区已暂停，其后的消息在恢复后重新拉取
+                continue;
+            }
+            final long dueAt = RetryPublisher.dueAt(record);
+            if (dueAt > now) {
+                consumer.seek(tp, record.offset());
+                consumer.pause(Collections.singleton(tp));
+                pausedUntil.put(tp, dueAt);
+                continue;
+            }
+            handled++;
+            try {
+                recordHandler.handle(record);
+                if (!recordHandler.completesAsync()) {
+                    offsetTracker.complete(record);
+                }
+            } catch (Exception e) {
+                log.error("重试处理异常，topic:{}, partition:{}, offset:{}, {}", record.topic(), record.partition(),
+                        record.offset(), e.getMessage(), e);
+                failed.add(new FailedRecord(record, e));
+            }
+        }
+        metrics.recordBatch(handled, System.nanoTime() - start, failed.size());
+        if (!failed.isEmpty()) {
+            final List<ConsumerRecord<String, String>> unpublished = retryPublisher.publish(failed);
+            if (!unpublished.isEmpty()) {
+                offsetTracker.rewind(consumer, unpublished);
+            }
+        }
+        offsetTracker.commitIfDue(consumer);
+    }
+
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            resumeDue(event.getConsumer());
+        }
+    }
+
+    private void resumeDue(Consumer<?, ?> consumer) {
+        if (pausedUntil.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Set<TopicPartition> assignment = consumer.assignment();
+        final Iterator<Map.Entry<TopicPartition, Long>> iterator = pausedUntil.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<TopicPartition, Long> entry = iterator.next();
+            if (!assignment.contains(entry.getKey())) {
+                // 分区已被重新分配，新分配的分区不会处于暂停状态
+                iterator.remove();
+            } else if (entry.getValue() <= now) {
+                consumer.resume(Collections.singleton(entry.getKey()));
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cn.yyzmain.kafka.listen;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 事务转发：在监听容器开启的kafka事务内把转换后的消息写到输出主题，
+ * 与消费offset一起提交，消费-转换-生产整体只生效一次
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.kafka.tx.enabled", havingValue = "true")
+public class TxForwarder {
+
+    private final KafkaTemplate<String, String> txKafkaTemplate;
+
+    private final MessageTransformer messageTransformer;
+
+    @Value("${app.kafka.tx.output-topic:yyzmain-out}")
+    private String outputTopic;
+
+    public TxForwarder(@Qualifier("txKafkaTemplate") KafkaTemplate<String, String> txKafkaTemplate,
+                       MessageTransformer messageTransformer) {
+        this.txKafkaTemplate = txKafkaTemplate;
+        this.messageTransformer = messageTransformer;
+    }
+
+    public void forward(List<ConsumerRecord<String, String>> records) {
+        for (ConsumerRecord<String, String> record : records) {
+            final String value = messageTransformer.transform(record);
+            if (value != null) {
+                txKafkaTemplate.send(outputTopic, record.key(), value);
+            }
+        }
+    }
+}
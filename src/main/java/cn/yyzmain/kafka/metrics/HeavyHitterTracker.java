@@ -0,0 +1,181 @@
+package cn.yyzmain.kafka.metrics;
+
+import cn.yyzmain.kafka.entity.HotKeyStat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 固定内存的热点统计：count-min sketch 估算频次 + top-K 候选表
+ * <p>
+ * sketch 更新为无锁原子自增；只有估算值达到候选表门槛时才尝试加锁更新候选表（抢不到锁直接跳过），
+ * 候选key的字符串只在进入候选表时创建一次
+ */
+public class HeavyHitterTracker {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int topK;
+    private final AtomicLongArray sketch;
+    private final LongAdder total = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] topHashes;
+    private final long[] topCounts;
+    private final String[] topKeys;
+    private int topSize;
+    /**
+     * 候选表中的最小估算值，候选表未满时为0
+     */
+    private volatile long minTopCount;
+
+    /**
+     * @param width sketch宽度，取2的幂
+     * @param topK  候选表大小
+     */
+    public HeavyHitterTracker(int width, int topK) {
+        this.width = Integer.highestOneBit(Math.max(width, 16));
+        this.topK = topK;
+        this.sketch = new AtomicLongArray(DEPTH * this.width);
+        this.topHashes = new long[topK];
+        this.topCounts = new long[topK];
+        this.topKeys = new String[topK];
+    }
+
+    /**
+     * 记录一次出现
+     *
+     * @param bytes  key所在字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public void add(byte[] bytes, int offset, int length) {
+        total.increment();
+        final long hash = hash(bytes, offset, length);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.incrementAndGet(cell(hash, i)));
+        }
+        // 只在首次出现或估算值每增长64次时检查候选表，降低锁竞争
+        if (estimate < minTopCount || (estimate != 1 && (estimate & 63) != 0)) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            offer(hash, estimate, bytes, offset, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void offer(long hash, long estimate, byte[] bytes, int offset, int length) {
+        int minIndex = -1;
+        for (int i = 0; i < topSize; i++) {
+            if (topHashes[i] == hash) {
+                topCounts[i] = Math.max(topCounts[i], estimate);
+                refreshMin();
+                return;
+            }
+            if (minIndex < 0 || topCounts[i] < topCounts[minIndex]) {
+                minIndex = i;
+            }
+        }
+        final int index;
+        if (topSize < topK) {
+            index = topSize++;
+        } else if (estimate > topCounts[minIndex]) {
+            index = minIndex;
+        } else {
+            return;
+        }
+        topHashes[index] = hash;
+        topCounts[index] = estimate;
+        topKeys[index] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        refreshMin();
+    }
+
+    private void refreshMin() {
+        if (topSize < topK) {
+            minTopCount = 0;
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < topSize; i++) {
+            min = Math.min(min, topCounts[i]);
+        }
+        minTopCount = min;
+    }
+
+    /**
+     * 按估算次数倒序返回热点
+     */
+    public List<HotKeyStat> top() {
+        final long sum = Math.max(1, total.sum());
+        final List<HotKeyStat> stats = new ArrayList<>(topK);
+        lock.lock();
+        try {
+            for (int i = 0; i < topSize; i++) {
+                final long estimate = estimate(topHashes[i]);
+                stats.add(new HotKeyStat().setKey(topKeys[i]).setEstimate(estimate).setShare((double) estimate / sum));
+            }
+        } finally {
+            lock.unlock();
+        }
+        stats.sort((a, b) -> Long.compare(b.getEstimate(), a.getEstimate()));
+        return stats;
+    }
+
+    private long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.get(cell(hash, i)));
+        }
+        return estimate;
+    }
+
+    private int cell(long hash, int row) {
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    public void reset() {
+        lock.lock();
+        try {
+            for (int i = 0; i < sketch.length(); i++) {
+                sketch.set(i, 0);
+            }
+            total.reset();
+            topSize = 0;
+            minTopCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 64位FNV-1a + 混淆，不产生对象分配
+     */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,51 @@
+package cn.yyzmain.kafka.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量监听器指标：消费条数（Prometheus中用rate()得到每秒条数）、失败条数、批次大小与批次处理耗时直方图
+ * <p>
+ * 分区积压由 MicrometerConsumerListener 暴露的 kafka_consumer_fetch_manager_records_lag 提供
+ */
+public class ListenerMetrics {
+
+    private final Counter records;
+    private final Counter failures;
+    private final DistributionSummary batchSize;
+    private final Timer batchDuration;
+
+    public ListenerMetrics(MeterRegistry registry, String listener) {
+        this.records = Counter.builder("kafka.listener.records")
+                .description("消费处理的消息数")
+                .tag("listener", listener)
+                .register(registry);
+        this.failures = Counter.builder("kafka.listener.failures")
+                .description("处理失败的消息数")
+                .tag("listener", listener)
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("kafka.listener.batch.size")
+                .description("单批处理的消息数")
+                .tag("listener", listener)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchDuration = Timer.builder("kafka.listener.batch.duration")
+                .description("单批处理耗时")
+                .tag("listener", listener)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordBatch(int size, long elapsedNanos, int failed) {
+        records.increment(size);
+        batchSize.record(size);
+        batchDuration.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (failed > 0) {
+            failures.increment(failed);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package cn.yyzmain.kafka.metrics;
+
+import cn.yyzmain.kafka.entity.HotKeyStat;
+import cn.yyzmain.kafka.entity.TopicTrafficStat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 生产端分区流量统计：每个主题每个分区一个 {@link LongAdder}，并按主题统计热点key/前缀
+ * <p>
+ * 由分区器在每条消息上调用，分区器实例不在spring容器内，因此使用单例
+ */
+public final class ProducerTrafficStats {
+
+    public static final ProducerTrafficStats INSTANCE = new ProducerTrafficStats();
+
+    /**
+     * 无key时取消息前缀（到第一个'-'为止）的最大长度
+     */
+    private static final int MAX_PREFIX_LENGTH = 32;
+
+    private final Map<String, TopicCounters> topics = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled = true;
+    private volatile int sketchWidth = 4096;
+    private volatile int topK = 20;
+
+    private ProducerTrafficStats() {
+    }
+
+    public void configure(boolean enabled, int sketchWidth, int topK) {
+        this.enabled = enabled;
+        this.sketchWidth = sketchWidth;
+        this.topK = topK;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一条消息的分区，热点按key统计，无key时按消息前缀统计
+     */
+    public void record(String topic, int partition, byte[] keyBytes, byte[] valueBytes) {
+        TopicCounters counters = topics.get(topic);
+        if (counters == null) {
+            counters = topics.computeIfAbsent(topic, t -> new TopicCounters(sketchWidth, topK));
+        }
+        counters.partition(partition).increment();
+        if (keyBytes != null) {
+            counters.hotKeys.add(keyBytes, 0, keyBytes.length);
+        } else if (valueBytes != null) {
+            final int limit = Math.min(valueBytes.length, MAX_PREFIX_LENGTH);
+            for (int i = 0; i < limit; i++) {
+                if (valueBytes[i] == '-') {
+                    counters.hotKeys.add(valueBytes, 0, i + 1);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 各主题分区流量分布
+     */
+    public List<TopicTrafficStat> partitions() {
+        final List<TopicTrafficStat> stats = new ArrayList<>(topics.size());
+        topics.forEach((topic, counters) -> {
+            final LongAdder[] adders = counters.partitions;
+            final long[] counts = new long[adders.length];
+            long total = 0;
+            for (int i = 0; i < adders.length; i++) {
+                counts[i] = adders[i].sum();
+                total += counts[i];
+            }
+            final TopicTrafficStat stat = new TopicTrafficStat().setTopic(topic).setTotal(total);
+            for (int i = 0; i < counts.length; i++) {
+                final double share = total == 0 ? 0 : (double) counts[i] / total;
+                stat.getPartitions().add(new TopicTrafficStat.PartitionCount().setPartition(i).setCount(counts[i]).setShare(share));
+                if (share > stat.getMaxShare()) {
+                    stat.setMaxShare(share).setMaxPartition(i);
+                }
+            }
+            stats.add(stat);
+        });
+        return stats;
+    }
+
+    /**
+     * 主题热点key/前缀
+     */
+    public List<HotKeyStat> hotKeys(String topic) {
+        final TopicCounters counters = topics.get(topic);
+        return counters == null ? Collections.emptyList() : counters.hotKeys.top();
+    }
+
+    public void reset() {
+        topics.clear();
+    }
+
+    private static final class TopicCounters {
+
+        private volatile LongAdder[] partitions = new LongAdder[0];
+
+        private final HeavyHitterTracker hotKeys;
+
+        private TopicCounters(int sketchWidth, int topK) {
+            this.hotKeys = new HeavyHitterTracker(sketchWidth, topK);
+        }
+
+        private LongAdder partition(int partition) {
+            final LongAdder[] adders = partitions;
+            if (partition < adders.length) {
+                return adders[partition];
+            }
+            return grow(partition);
+        }
+
+        private synchronized LongAdder grow(int partition) {
+            final LongAdder[] adders = partitions;
+            if (partition < adders.length) {
+                return adders[partition];
+            }
+            final LongAdder[] grown = new LongAdder[partition + 1];
+            System.arraycopy(adders, 0, grown, 0, adders.length);
+            for (int i = adders.length; i < grown.length; i++) {
+                grown[i] = new LongAdder();
+            }
+            partitions = grown;
+            return grown[partition];
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 重复消息过滤：按 主题+key+消息内容 的哈希判断是否已处理过，重平衡、回退后重新投递的消息在处理前丢弃
+ * <p>
+ * 使用按时间窗口轮换的两代布隆过滤器，内存固定；只记录在 {@link OffsetTracker} 中标记完成（落库、已转入重试主题）的消息，
+ * 判定存在误判（把新消息当成重复），误判率由预计条数和目标误判率决定，受内存上限约束，实际估算值通过指标暴露
+ */
+@Slf4j
+@Component
+public class DuplicateFilter {
+
+    private static final int GENERATIONS = 2;
+
+    @Value("${app.kafka.dedup.enabled:true}")
+    private boolean enabled;
+    /**
+     * 每个时间窗口预计处理的消息数
+     */
+    @Value("${app.kafka.dedup.expected-insertions:1000000}")
+    private long expectedInsertions;
+    /**
+     * 目标误判率
+     */
+    @Value("${app.kafka.dedup.fpp:0.001}")
+    private double fpp;
+    /**
+     * 时间窗口，消息在1~2个窗口内可被识别为重复
+     */
+    @Value("${app.kafka.dedup.window-ms:600000}")
+    private long windowMs;
+    /**
+     * 所有代合计的内存上限：byte
+     */
+    @Value("${app.kafka.dedup.max-memory-bytes:16777216}")
+    private long maxMemoryBytes;
+
+    private final MeterRegistry meterRegistry;
+
+    private int bitCount;
+    private int hashCount;
+    private volatile Generation[] generations;
+    private volatile long nextRotateAt;
+
+    private Counter checked;
+    private Counter duplicates;
+
+    public DuplicateFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        // m = -n*ln(p)/(ln2)^2，按位数上限截断
+        final double optimalBits = -expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        final long maxBits = maxMemoryBytes * 8 / GENERATIONS;
+        bitCount = (int) Math.max(64, Math.min(Math.min(optimalBits, maxBits), Integer.MAX_VALUE - 63));
+        hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        final Generation[] initial = new Generation[GENERATIONS];
+        for (int i = 0; i < GENERATIONS; i++) {
+            initial[i] = new Generation(bitCount);
+        }
+        generations = initial;
+        nextRotateAt = System.currentTimeMillis() + windowMs;
+
+        checked = Counter.builder("kafka.dedup.checked").description("参与去重判断的消息数").register(meterRegistry);
+        duplicates = Counter.builder("kafka.dedup.duplicates").description("判定为重复被丢弃的消息数").register(meterRegistry);
+        Gauge.builder("kafka.dedup.memory.bytes", this, DuplicateFilter::memoryBytes)
+                .description("布隆过滤器占用内存").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("kafka.dedup.fpp.configured", this, filter -> filter.fpp)
+                .description("配置的目标误判率").register(meterRegistry);
+        Gauge.builder("kafka.dedup.fpp.estimated", this, DuplicateFilter::estimatedFpp)
+                .description("按当前写入量估算的误判率").register(meterRegistry);
+        log.info("==>>>重复消息过滤: enabled:{}, bits:{}, hashes:{}, memory:{}KB", enabled, bitCount, hashCount,
+                memoryBytes() / 1024);
+    }
+
+    /**
+     * 过滤掉已处理过的消息，没有重复时直接返回原列表
+     */
+    public List<ConsumerRecord<String, String>> filter(List<ConsumerRecord<String, String>> records) {
+        return filter(records, null);
+    }
+
+    /**
+     * 过滤掉已处理过的消息，bypass 判定为true的消息（如按时间重放的）不做过滤
+     */
+    public List<ConsumerRecord<String, String>> filter(List<ConsumerRecord<String, String>> records,
+                                                       Predicate<ConsumerRecord<String, String>> bypass) {
+        if (!enabled || records.isEmpty()) {
+            return records;
+        }
+        rotateIfDue();
+        final Generation[] current = generations;
+        List<ConsumerRecord<String, String>> fresh = null;
+        for (int i = 0; i < records.size(); i++) {
+            final ConsumerRecord<String, String> record = records.get(i);
+            final long hash = hash(record);
+            if ((bypass == null || !bypass.test(record)) && mightContain(current, hash)) {
+                if (fresh == null) {
+                    fresh = new ArrayList<>(records.subList(0, i));
+                }
+                log.debug("==>>>丢弃重复消息,{}-{}@{}", record.topic(), record.partition(), record.offset());
+            } else if (fresh != null) {
+                fresh.add(record);
+            }
+        }
+        checked.increment(records.size());
+        if (fresh == null) {
+            return records;
+        }
+        duplicates.increment(records.size() - fresh.size());
+        return fresh;
+    }
+
+    /**
+     * 记录已处理完成的消息，可在任意线程调用；
+     * 异步完成的消息（攒批落库）只有落库后才记录，未落库的重新投递时不会被当成重复丢弃
+     */
+    public void markProcessed(ConsumerRecord<?, ?> record) {
+        if (enabled) {
+            put(generations[0], hash(record));
+        }
+    }
+
+    private boolean mightContain(Generation[] current, long hash) {
+        for (Generation generation : current) {
+            if (generation.contains(hash, bitCount, hashCount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(Generation generation, long hash) {
+        if (generation.put(hash, bitCount, hashCount)) {
+            generation.insertions.increment();
+        }
+    }
+
+    /**
+     * 窗口到期时丢弃最老的一代，换上新的空过滤器
+     */
+    private void rotateIfDue() {
+        if (System.currentTimeMillis() < nextRotateAt) {
+            return;
+        }
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (now < nextRotateAt) {
+                return;
+            }
+            final Generation[] rotated = new Generation[GENERATIONS];
+            rotated[0] = new Generation(bitCount);
+            System.arraycopy(generations, 0, rotated, 1, GENERATIONS - 1);
+            generations = rotated;
+            nextRotateAt = now + windowMs;
+        }
+    }
+
+    private long memoryBytes() {
+        return (long) GENERATIONS * ((bitCount + 63) / 64) * 8;
+    }
+
+    /**
+     * 任一代误判即误判：1 - ∏(1 - (1 - e^(-kn/m))^k)
+     */
+    double estimatedFpp() {
+        double pass = 1;
+        for (Generation generation : generations) {
+            final double fill = 1 - Math.exp(-(double) hashCount * generation.insertions.sum() / bitCount);
+            pass *= 1 - Math.pow(fill, hashCount);
+        }
+        return 1 - pass;
+    }
+
+    /**
+     * 主题、key、内容逐字符混合的64位哈希，不创建中间对象
+     */
+    private static long hash(ConsumerRecord<?, ?> record) {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, record.topic());
+        h = mix(h, record.key());
+        h = mix(h, record.value());
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mix(long h, Object value) {
+        if (value == null) {
+            return (h ^ 0xff) * 0x100000001b3L;
+        }
+        final CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // 分隔符，避免 "ab"+"c" 与 "a"+"bc" 相同
+        return (h ^ 0x1f) * 0x100000001b3L;
+    }
+
+    private static final class Generation {
+
+        private final AtomicLongArray words;
+        private final LongAdder insertions = new LongAdder();
+
+        Generation(int bitCount) {
+            this.words = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        boolean contains(long hash, int bitCount, int hashCount) {
+            final int h1 = (int) hash;
+            final int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return 是否有新置位（即此前不存在）
+         */
+        boolean put(long hash, int bitCount, int hashCount) {
+            final int h1 = (int) hash;
+            final int h2 = (int) (hash >>> 32) | 1;
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                final int index = bit >>> 6;
+                final long mask = 1L << bit;
+                long word;
+                while (((word = words.get(index)) & mask) == 0) {
+                    if (words.compareAndSet(index, word, word | mask)) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            return changed;
+        }
+    }
+}
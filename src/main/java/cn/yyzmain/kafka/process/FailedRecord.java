@@ -0,0 +1,16 @@
+package cn.yyzmain.kafka.process;
+
+import lombok.Data;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 处理失败的消息及异常
+ */
+@Data
+public class FailedRecord {
+
+    private final ConsumerRecord<String, String> record;
+
+    private final Exception exception;
+
+}
@@ -0,0 +1,138 @@
+package cn.yyzmain.kafka.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消费流控
+ * <p>
+ * 背压：当前消费者所分配分区中未完成（已拉取未处理完或未落库）的消息数超过高水位时暂停这些分区，降到低水位以下再恢复；
+ * 自适应批次：按每条消息处理耗时的EWMA估算在 max.poll.interval.ms 的预算内能处理的条数，
+ * 超出部分回退位置留给下次拉取，避免处理超时触发重平衡。所有操作都在消费线程上进行
+ */
+@Slf4j
+@Component
+public class FlowController {
+
+    private final OffsetTracker offsetTracker;
+
+    @Value("${app.kafka.flow.high-water:5000}")
+    private int highWater;
+    @Value("${app.kafka.flow.low-water:1000}")
+    private int lowWater;
+    /**
+     * 单批处理最多占用 max.poll.interval.ms 的比例
+     */
+    @Value("${app.kafka.flow.poll-budget-ratio:0.5}")
+    private double pollBudgetRatio;
+    @Value("${app.kafka.flow.min-batch:10}")
+    private int minBatch;
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+    @Value("${spring.kafka.consumer.max-poll-interval-ms:300000}")
+    private long maxPollIntervalMs;
+
+    private static final double ALPHA = 0.2;
+
+    /**
+     * 每条消息的平均处理耗时：ns，0表示尚无样本
+     */
+    private volatile double nanosPerRecord;
+
+    /**
+     * 因背压暂停的分区
+     */
+    private final Set<TopicPartition> backpressured = ConcurrentHashMap.newKeySet();
+
+    public FlowController(OffsetTracker offsetTracker) {
+        this.offsetTracker = offsetTracker;
+    }
+
+    /**
+     * 按当前批次预算截取本次处理的消息，超出部分回退各分区位置
+     */
+    public List<ConsumerRecord<String, String>> admit(Consumer<?, ?> consumer, List<ConsumerRecord<String, String>> records) {
+        final int limit = effectiveBatchSize();
+        if (records.size() <= limit) {
+            return records;
+        }
+        final Map<TopicPartition, Long> rewind = new HashMap<>();
+        for (ConsumerRecord<String, String> record : records.subList(limit, records.size())) {
+            rewind.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+        }
+        rewind.forEach(consumer::seek);
+        log.debug("==>>>本批次{}条，按处理耗时只处理{}条", records.size(), limit);
+        return records.subList(0, limit);
+    }
+
+    /**
+     * 批次处理完成后更新耗时统计并检查背压
+     */
+    public void afterBatch(Consumer<?, ?> consumer, int count, long elapsedNanos) {
+        if (count > 0) {
+            final double sample = (double) elapsedNanos / count;
+            final double current = nanosPerRecord;
+            nanosPerRecord = current == 0 ? sample : current + ALPHA * (sample - current);
+        }
+        checkBackpressure(consumer);
+    }
+
+    /**
+     * 分区暂停后不再收到消息，由容器空闲事件检查是否恢复
+     */
+    @EventListener(condition = "event.listenerId.startsWith('mainListen')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            checkBackpressure(event.getConsumer());
+        }
+    }
+
+    void checkBackpressure(Consumer<?, ?> consumer) {
+        final Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return;
+        }
+        final int pending = offsetTracker.pendingCount(assignment);
+        // 只恢复由背压暂停的分区，其他原因（如重放限速）暂停的分区由各自负责恢复
+        final Set<TopicPartition> paused = new HashSet<>(consumer.paused());
+        paused.retainAll(backpressured);
+        if (paused.isEmpty() && pending >= highWater) {
+            log.warn("==>>>未完成消息{}条超过高水位{}，暂停分区{}", pending, highWater, assignment);
+            consumer.pause(assignment);
+            backpressured.addAll(assignment);
+        } else if (!paused.isEmpty() && pending <= lowWater) {
+            log.info("==>>>未完成消息{}条降至低水位{}，恢复分区{}", pending, lowWater, paused);
+            consumer.resume(paused);
+            backpressured.removeAll(assignment);
+        }
+    }
+
+    /**
+     * 在拉取间隔预算内可以处理的条数
+     */
+    public int effectiveBatchSize() {
+        final double perRecord = nanosPerRecord;
+        if (perRecord <= 0) {
+            return maxPollRecords;
+        }
+        final double budgetNanos = maxPollIntervalMs * 1_000_000D * pollBudgetRatio;
+        return (int) Math.max(minBatch, Math.min(maxPollRecords, budgetNanos / perRecord));
+    }
+
+    public double getNanosPerRecord() {
+        return nanosPerRecord;
+    }
+}
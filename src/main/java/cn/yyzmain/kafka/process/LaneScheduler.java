@@ -0,0 +1,378 @@
+package cn.yyzmain.kafka.process;
+
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按业务类别（消息前缀）或分区划分优先级通道
+ * <p>
+ * 派发：每个通道有自己的单线程分片组，线程数按权重分配（最高权重的通道为 threads 个），所有消费者共用；
+ * dispatch() 只把消息放入各通道队列即返回，消费线程继续拉取，低权重通道的积压不会拖慢高权重通道；
+ * 有key的消息在分片内保持顺序，同一key还有消息未处理完时后续消息进入同一通道，跨类别的同key消息不会被调换顺序；
+ * key为空的消息按offset分散到通道内各分片。处理失败的消息由通道线程转入重试主题，发布失败的保持未完成，offset停在这里，
+ * 重启或重平衡后重新消费；重平衡时已派发未处理的消息仍会处理，可能与接手的消费者重复（至少一次）；
+ * 背压：按比分区权重更高的各通道中未处理完的消息数（所有消费者合计）暂停分区，低权重的先暂停
+ * （分区权重取配置值，未配置时取最近派发的消息中出现的最高通道权重），最高权重的分区只在达到全局高水位时由 {@link FlowController} 暂停
+ */
+@Slf4j
+@Component
+public class LaneScheduler {
+
+    @Value("${app.kafka.lane.enabled:false}")
+    private boolean enabled;
+    /**
+     * 前缀权重，格式 a-:8,b-:4,c-:1
+     */
+    @Value("${app.kafka.lane.prefix-weights:a-:8,b-:4,c-:1}")
+    private String prefixWeights;
+    /**
+     * 分区权重，格式 0:8,1:4，优先于前缀权重用于暂停判断
+     */
+    @Value("${app.kafka.lane.partition-weights:}")
+    private String partitionWeights;
+
+    @Value("${app.kafka.lane.default-weight:1}")
+    private int defaultWeight;
+    /**
+     * 最高权重通道的线程数，其他通道按权重比例分配，至少1个
+     */
+    @Value("${app.kafka.lane.threads:4}")
+    private int threads;
+
+    @Value("${app.kafka.flow.high-water:5000}")
+    private int highWater;
+
+    @Value("${app.kafka.flow.low-water:1000}")
+    private int lowWater;
+
+    private final OffsetTracker offsetTracker;
+
+    private final RetryPublisher retryPublisher;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 0号为默认通道，其后依次为前缀通道、分区通道
+     */
+    private final List<Lane> lanes = new ArrayList<>();
+    private final List<Lane> prefixLanes = new ArrayList<>();
+    private final Map<Integer, Lane> partitionLanes = new HashMap<>();
+    private int maxWeight;
+
+    /**
+     * 还有消息未处理完的key及其所在通道
+     */
+    private final Map<String, KeyLane> inflightKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 未配置分区权重时，各分区最近派发的消息中出现的最高通道权重
+     */
+    private final Map<TopicPartition, Integer> observedWeights = new ConcurrentHashMap<>();
+
+    /**
+     * 因通道优先级暂停的分区
+     */
+    private final Set<TopicPartition> lanePaused = ConcurrentHashMap.newKeySet();
+
+    public LaneScheduler(OffsetTracker offsetTracker, RetryPublisher retryPublisher, MeterRegistry meterRegistry) {
+        this.offsetTracker = offsetTracker;
+        this.retryPublisher = retryPublisher;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        lanes.add(new Lane("default", defaultWeight));
+        for (String[] entry : parse(prefixWeights)) {
+            final Lane lane = new Lane(entry[0], Integer.parseInt(entry[1]));
+            lanes.add(lane);
+            prefixLanes.add(lane);
+        }
+        for (String[] entry : parse(partitionWeights)) {
+            final Lane lane = new Lane("partition-" + entry[0], Integer.parseInt(entry[1]));
+            lanes.add(lane);
+            partitionLanes.put(Integer.parseInt(entry[0]), lane);
+        }
+        for (Lane lane : lanes) {
+            if (lane.weight <= 0) {
+                throw new IllegalArgumentException("lane weight must be positive: " + lane.name);
+            }
+            maxWeight = Math.max(maxWeight, lane.weight);
+        }
+        for (Lane lane : lanes) {
+            lane.records = Counter.builder("kafka.lane.records").description("各通道派发的消息数")
+                    .tag("lane", lane.name).register(meterRegistry);
+            lane.failures = Counter.builder("kafka.lane.failures").description("各通道处理失败的消息数")
+                    .tag("lane", lane.name).register(meterRegistry);
+            Gauge.builder("kafka.lane.pending", lane.pending, AtomicInteger::get).description("各通道已派发未处理完的消息数")
+                    .tag("lane", lane.name).register(meterRegistry);
+        }
+        Gauge.builder("kafka.lane.paused.partitions", lanePaused, Set::size)
+                .description("因通道优先级暂停的分区数").register(meterRegistry);
+        if (enabled) {
+            for (Lane lane : lanes) {
+                lane.start((int) Math.max(1, (long) threads * lane.weight / maxWeight));
+            }
+            log.info("==>>>优先级通道: prefix:{}, partition:{}, default:{}, threads:{}", prefixWeights, partitionWeights,
+                    defaultWeight, threads);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        for (Lane lane : lanes) {
+            lane.shutdown();
+        }
+        for (Lane lane : lanes) {
+            lane.awaitTermination();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 把本批次消息放入各通道队列后立即返回，不等待处理完成；必须在消费线程上调用
+     *
+     * @param handler 单条处理，需要自行在 {@link OffsetTracker} 中标记完成
+     */
+    public void dispatch(List<ConsumerRecord<String, String>> records, RecordHandler handler) {
+        TopicPartition lastPartition = null;
+        int partitionWeight = 0;
+        for (ConsumerRecord<String, String> record : records) {
+            final Lane lane = record.key() == null ? laneOf(record) : acquire(record);
+            lane.submit(record, handler);
+            // 批次内同一分区的消息连续，按分区记录出现的最高权重
+            if (lastPartition == null || lastPartition.partition() != record.partition()
+                    || !lastPartition.topic().equals(record.topic())) {
+                if (lastPartition != null) {
+                    observedWeights.put(lastPartition, partitionWeight);
+                }
+                lastPartition = new TopicPartition(record.topic(), record.partition());
+                partitionWeight = 0;
+            }
+            partitionWeight = Math.max(partitionWeight, lane.weight);
+        }
+        if (lastPartition != null) {
+            observedWeights.put(lastPartition, partitionWeight);
+        }
+    }
+
+    private Lane acquire(ConsumerRecord<String, String> record) {
+        return inflightKeys.compute(record.key(), (key, keyLane) -> {
+            if (keyLane == null) {
+                keyLane = new KeyLane(laneOf(record));
+            }
+            keyLane.inflight++;
+            return keyLane;
+        }).lane;
+    }
+
+    private void release(ConsumerRecord<String, String> record) {
+        inflightKeys.computeIfPresent(record.key(), (key, keyLane) -> --keyLane.inflight == 0 ? null : keyLane);
+    }
+
+    private void handle(Lane lane, ConsumerRecord<String, String> record, RecordHandler handler) {
+        try {
+            handler.handle(record);
+        } catch (Exception e) {
+            log.error("处理异常，topic:{}, partition:{}, offset:{}, {}", record.topic(), record.partition(),
+                    record.offset(), e.getMessage(), e);
+            lane.failures.increment();
+            if (!retryPublisher.publish(Collections.singletonList(new FailedRecord(record, e))).isEmpty()) {
+                log.error("==>>>通道{}处理失败且未能转入重试主题,{}-{}@{}", lane.name, record.topic(), record.partition(),
+                        record.offset());
+            }
+        } finally {
+            lane.pending.decrementAndGet();
+            if (record.key() != null) {
+                release(record);
+            }
+        }
+    }
+
+    /**
+     * 比分区权重更高的通道中未处理完的消息数达到该分区的阈值时暂停分区，低权重的先暂停：
+     * 阈值 = 低水位 + (高水位 - 低水位) * 权重 / 最高权重，降到 阈值 * 低水位 / 高水位 以下恢复
+     */
+    public void checkBackpressure(Consumer<?, ?> consumer) {
+        if (!enabled) {
+            return;
+        }
+        final Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return;
+        }
+        final Set<TopicPartition> toPause = new HashSet<>();
+        final Set<TopicPartition> toResume = new HashSet<>();
+        final Set<TopicPartition> paused = consumer.paused();
+        for (TopicPartition tp : assignment) {
+            final int weight = weightOf(tp);
+            final long pending = pendingAbove(weight);
+            final long pauseAt = lowWater + (long) (highWater - lowWater) * weight / maxWeight;
+            if (lanePaused.contains(tp) && paused.contains(tp)) {
+                if (pending <= pauseAt * lowWater / highWater) {
+                    toResume.add(tp);
+                }
+                continue;
+            }
+            // 已被其他流控恢复的分区按未暂停重新判断
+            lanePaused.remove(tp);
+            if (weight < maxWeight && pending >= pauseAt) {
+                toPause.add(tp);
+            }
+        }
+        if (!toPause.isEmpty()) {
+            log.warn("==>>>高优先级通道积压，暂停低优先级分区{}", toPause);
+            consumer.pause(toPause);
+            lanePaused.addAll(toPause);
+        }
+        if (!toResume.isEmpty()) {
+            log.info("==>>>高优先级通道积压回落，恢复分区{}", toResume);
+            lanePaused.removeAll(toResume);
+            consumer.resume(toResume);
+        }
+    }
+
+    @EventListener(condition = "event.listenerId.startsWith('mainListen')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            checkBackpressure(event.getConsumer());
+        }
+    }
+
+    /**
+     * 权重高于weight的通道中未处理完的消息数
+     */
+    long pendingAbove(int weight) {
+        long pending = 0;
+        for (Lane lane : lanes) {
+            if (lane.weight > weight) {
+                pending += lane.pending.get();
+            }
+        }
+        return pending;
+    }
+
+    int weightOf(TopicPartition tp) {
+        final Lane lane = partitionLanes.get(tp.partition());
+        if (lane != null) {
+            return lane.weight;
+        }
+        final Integer observed = observedWeights.get(tp);
+        return observed != null ? observed : defaultWeight;
+    }
+
+    private Lane laneOf(ConsumerRecord<String, String> record) {
+        final String value = record.value();
+        if (value != null) {
+            for (Lane lane : prefixLanes) {
+                if (value.startsWith(lane.name)) {
+                    return lane;
+                }
+            }
+        }
+        final Lane lane = partitionLanes.get(record.partition());
+        return lane != null ? lane : lanes.get(0);
+    }
+
+    private static List<String[]> parse(String weights) {
+        final List<String[]> entries = new ArrayList<>();
+        for (String entry : StringUtils.split(StringUtils.defaultString(weights), ',')) {
+            final int split = entry.lastIndexOf(':');
+            if (split <= 0 || !StringUtils.isNumeric(entry.substring(split + 1).trim())) {
+                throw new IllegalArgumentException("invalid lane weight: " + entry);
+            }
+            entries.add(new String[]{entry.substring(0, split).trim(), entry.substring(split + 1).trim()});
+        }
+        return entries;
+    }
+
+    private static final class KeyLane {
+
+        private final Lane lane;
+        private int inflight;
+
+        KeyLane(Lane lane) {
+            this.lane = lane;
+        }
+    }
+
+    private final class Lane {
+
+        private final String name;
+        private final int weight;
+        private final AtomicInteger pending = new AtomicInteger();
+        private Counter records;
+        private Counter failures;
+        private ExecutorService[] shards = new ExecutorService[0];
+
+        Lane(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        void start(int shardCount) {
+            shards = new ExecutorService[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                final String threadName = "lane-" + name + "-" + i;
+                shards[i] = Executors.newSingleThreadExecutor(r -> {
+                    final Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+
+        /**
+         * 有key的按key哈希到固定分片保持顺序，key为空的按offset分散
+         */
+        void submit(ConsumerRecord<String, String> record, RecordHandler handler) {
+            final int shard = record.key() == null
+                    ? (int) ((record.offset() + record.partition()) % shards.length)
+                    : (ShardedBatchProcessor.keyHash(record.key()) & Integer.MAX_VALUE) % shards.length;
+            pending.incrementAndGet();
+            records.increment();
+            shards[shard].execute(() -> handle(this, record, handler));
+        }
+
+        void shutdown() {
+            for (ExecutorService shard : shards) {
+                shard.shutdown();
+            }
+        }
+
+        void awaitTermination() throws InterruptedException {
+            for (ExecutorService shard : shards) {
+                shard.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 乱序完成的offset跟踪
+ * <p>
+ * 拉取到的消息先 register，处理完成（任意顺序、任意线程）后 complete，
+ * 只提交每个分区从头开始连续完成的最高offset，未完成的消息在重启或重平衡后会被重新消费；
+ * 提交在完成数达到阈值或距上次提交超过间隔时进行，必须在消费线程上调用（KafkaConsumer非线程安全），
+ * 没有新消息时由容器空闲事件触发提交
+ */
+@Slf4j
+@Component
+public class OffsetTracker implements ConsumerAwareRebalanceListener {
+
+    /**
+     * 距上次提交的最长间隔：ms
+     */
+    @Value("${app.kafka.commit.interval-ms:5000}")
+    private long commitIntervalMs;
+
+    /**
+     * 分区累计完成多少条后立即提交
+     */
+    @Value("${app.kafka.commit.count:1000}")
+    private int commitCount;
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * 按主题登记的完成回调
+     */
+    private final Map<String, List<CompletionListener>> completionListeners = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer commitSuccess;
+    private final Timer commitFailure;
+
+    public OffsetTracker(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.commitSuccess = commitTimer("success");
+        this.commitFailure = commitTimer("failure");
+        Gauge.builder("kafka.listener.pending", this, tracker -> tracker.pendingCount(tracker.partitions.keySet()))
+                .description("已拉取未处理完成的消息数")
+                .register(meterRegistry);
+    }
+
+    private Timer commitTimer(String result) {
+        return Timer.builder("kafka.consumer.commit")
+                .description("offset同步提交耗时")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void countRebalance(String type, int partitionCount) {
+        Counter.builder("kafka.consumer.rebalance")
+                .description("重平衡中分区变化次数")
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(partitionCount);
+    }
+
+    /**
+     * 登记本次拉取的消息为未完成
+     */
+    public void register(List<ConsumerRecord<String, String>> records) {
+        TopicPartition lastPartition = null;
+        PartitionOffsets offsets = null;
+        for (ConsumerRecord<String, String> record : records) {
+            if (offsets == null || record.partition() != lastPartition.partition() || !record.topic().equals(lastPartition.topic())) {
+                lastPartition = new TopicPartition(record.topic(), record.partition());
+                offsets = partitions.computeIfAbsent(lastPartition, tp -> new PartitionOffsets());
+            }
+            offsets.register(record.offset());
+        }
+    }
+
+    /**
+     * 标记消息处理完成，可在任意线程调用
+     */
+    public void complete(ConsumerRecord<?, ?> record) {
+        final PartitionOffsets offsets = partitions.get(new TopicPartition(record.topic(), record.partition()));
+        if (offsets != null) {
+            offsets.complete(record.offset());
+        }
+        final List<CompletionListener> listeners = completionListeners.get(record.topic());
+        if (listeners != null) {
+            for (CompletionListener listener : listeners) {
+                listener.onComplete(record);
+            }
+        }
+    }
+
+    /**
+     * 指定主题的消息标记完成时回调，在调用 complete 的线程上执行；同一个tracker上其他主题（如重试主题）的消息不会触发
+     */
+    public void addCompletionListener(String topic, CompletionListener listener) {
+        completionListeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * 拉取后不做处理的消息（如bytes模式解码前过滤掉的）直接视为已完成，分区末尾或整批都被过滤时offset也能推进；
+     * 只处理当前拉取位置之前的消息，本批次中被回退（seek）过的部分会重新拉取，不能跳过。必须在消费线程上调用
+     */
+    public void skip(Consumer<?, ?> consumer, List<? extends ConsumerRecord<?, ?>> records) {
+        final Map<TopicPartition, Long> positions = new HashMap<>();
+        for (ConsumerRecord<?, ?> record : records) {
+            final TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            if (record.offset() < positions.computeIfAbsent(tp, consumer::position)) {
+                partitions.computeIfAbsent(tp, key -> new PartitionOffsets()).skip(record.offset());
+            }
+        }
+    }
+
+    /**
+     * 达到数量阈值或时间间隔时提交当前消费者所分配分区的连续完成offset
+     */
+    public void commitIfDue(Consumer<?, ?> consumer) {
+        commit(consumer, consumer.assignment(), false);
+    }
+
+    /**
+     * 处理失败的消息：把所在分区回退到最早失败的offset重新消费，其后已完成的消息会被重复处理
+     */
+    public void rewind(Consumer<?, ?> consumer, List<ConsumerRecord<String, String>> failed) {
+        final Map<TopicPartition, Long> earliest = new HashMap<>();
+        for (ConsumerRecord<String, String> record : failed) {
+            earliest.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+        }
+        earliest.forEach((tp, offset) -> {
+            log.warn("==>>>处理失败，回退重新消费,partition:{}, offset:{}", tp, offset);
+            consumer.seek(tp, offset);
+        });
+    }
+
+    /**
+     * 未完成的消息数
+     */
+    public int pendingCount(TopicPartition tp) {
+        final PartitionOffsets offsets = partitions.get(tp);
+        return offsets == null ? 0 : offsets.pendingCount();
+    }
+
+    /**
+     * 多个分区的未完成消息总数
+     */
+    public int pendingCount(Collection<TopicPartition> topicPartitions) {
+        int pending = 0;
+        for (TopicPartition tp : topicPartitions) {
+            pending += pendingCount(tp);
+        }
+        return pending;
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        // 空闲事件在消费线程上发布，可以直接使用consumer
+        if (event.getConsumer() != null) {
+            commit(event.getConsumer(), event.getConsumer().assignment(), true);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        countRebalance("revoked", revoked.size());
+        commit(consumer, revoked, true);
+        revoked.forEach(partitions::remove);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        countRebalance("lost", lost.size());
+        lost.forEach(partitions::remove);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+        countRebalance("assigned", assigned.size());
+        // 重新分配后从broker上的已提交位置开始，旧的跟踪状态作废
+        assigned.forEach(partitions::remove);
+    }
+
+    private void commit(Consumer<?, ?> consumer, Collection<TopicPartition> topicPartitions, boolean force) {
+        final long now = System.currentTimeMillis();
+        boolean due = force;
+        Map<TopicPartition, OffsetAndMetadata> commits = Collections.emptyMap();
+        for (TopicPartition tp : topicPartitions) {
+            final PartitionOffsets offsets = partitions.get(tp);
+            if (offsets == null) {
+                continue;
+            }
+            synchronized (offsets) {
+                final long committable = offsets.committable();
+                if (committable <= offsets.committed) {
+                    continue;
+                }
+                due |= offsets.completedSinceCommit >= commitCount || now - offsets.lastCommitTime >= commitIntervalMs;
+                if (commits.isEmpty()) {
+                    commits = new HashMap<>();
+                }
+                commits.put(tp, new OffsetAndMetadata(committable));
+            }
+        }
+        if (!due || commits.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            consumer.commitSync(commits);
+            commitSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            commitFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            // 保留跟踪状态，下次继续提交；分区已被回收时由重平衡后的消费者重新消费
+            log.error("==>>>offset提交失败,{}", commits, e);
+            return;
+        }
+        commits.forEach((tp, offset) -> {
+            final PartitionOffsets offsets = partitions.get(tp);
+            if (offsets != null) {
+                offsets.markCommitted(offset.offset(), now);
+            }
+        });
+        log.debug("==>>>offset已提交,{}", commits);
+    }
+
+    @FunctionalInterface
+    public interface CompletionListener {
+
+        void onComplete(ConsumerRecord<?, ?> record);
+    }
+
+    /**
+     * 单个分区的完成状态：pending位图第i位表示offset base+i未完成；
+     * 两个登记offset之间的空洞（压缩主题、事务标记）视为已完成
+     */
+    static final class PartitionOffsets {
+
+        private long base = -1;
+        /**
+         * 下一个期望登记的offset
+         */
+        private long next = -1;
+        private BitSet pending = new BitSet();
+        private long committed = -1;
+        private int completedSinceCommit;
+        private long lastCommitTime = System.currentTimeMillis();
+
+        synchronized void register(long offset) {
+            if (base < 0 || offset < next) {
+                // 首次登记或回退（seek、重新投递）后从该offset重新开始跟踪
+                base = offset;
+                pending.clear();
+            }
+            if (committed < 0) {
+                // 首条消息的位置即消费起点，无需提交
+                committed = offset;
+            }
+            pending.set((int) (offset - base));
+            next = offset + 1;
+        }
+
+        /**
+         * 不需要处理的offset：在已登记区间内的按空洞处理，之后的直接推进下一个期望offset
+         */
+        synchronized void skip(long offset) {
+            if (base < 0) {
+                base = offset;
+                pending.clear();
+                if (committed < 0) {
+                    committed = offset;
+                }
+            } else if (offset < next) {
+                return;
+            }
+            next = offset + 1;
+            completedSinceCommit++;
+        }
+
+        synchronized void complete(long offset) {
+            if (offset < base || offset >= next) {
+                return;
+            }
+            final int index = (int) (offset - base);
+            if (pending.get(index)) {
+                pending.clear(index);
+                completedSinceCommit++;
+            }
+        }
+
+        /**
+         * 可提交的offset：第一个未完成的offset，全部完成时为下一个待消费offset
+         */
+        synchronized long committable() {
+            if (base < 0) {
+                return -1;
+            }
+            final int first = pending.nextSetBit(0);
+            return first < 0 ? next : base + first;
+        }
+
+        synchronized void markCommitted(long offset, long now) {
+            committed = offset;
+            completedSinceCommit = 0;
+            lastCommitTime = now;
+            // 丢弃已提交部分，位图只保留未提交区间
+            final int shift = (int) (offset - base);
+            if (shift > 0) {
+                pending = pending.get(shift, Math.max(shift, pending.length()));
+                base = offset;
+            }
+        }
+
+        synchronized int pendingCount() {
+            return pending.cardinality();
+        }
+    }
+}
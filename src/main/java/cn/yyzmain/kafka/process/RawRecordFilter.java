@@ -0,0 +1,174 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * bytes消费模式下的原始字节过滤：按消息前缀、header值直接比较字节，
+ * 只有通过过滤的消息才做UTF-8解码，丢弃的消息不产生String对象
+ * <p>
+ * 被过滤的消息交给 {@link OffsetTracker#skip} 直接视为已完成，分区内全部被过滤时offset也能推进
+ */
+@Slf4j
+@Component
+public class RawRecordFilter {
+
+    /**
+     * 只保留以这些前缀开头的消息，为空不限制
+     */
+    @Value("${app.kafka.consumer.bytes.include-prefixes:}")
+    private String includePrefixes;
+    /**
+     * 丢弃以这些前缀开头的消息
+     */
+    @Value("${app.kafka.consumer.bytes.exclude-prefixes:}")
+    private String excludePrefixes;
+    /**
+     * 只保留该header取值在 header-values 中的消息，为空不限制
+     */
+    @Value("${app.kafka.consumer.bytes.header:}")
+    private String headerName;
+    @Value("${app.kafka.consumer.bytes.header-values:}")
+    private String headerValues;
+
+    private final MeterRegistry meterRegistry;
+
+    private byte[][] includes;
+    private byte[][] excludes;
+    private byte[][] acceptedHeaderValues;
+
+    private Counter prefixFiltered;
+    private Counter headerFiltered;
+
+    public RawRecordFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        includes = bytes(includePrefixes);
+        excludes = bytes(excludePrefixes);
+        acceptedHeaderValues = bytes(headerValues);
+        prefixFiltered = filteredCounter("prefix");
+        headerFiltered = filteredCounter("header");
+        log.info("==>>>原始字节过滤: include:{}, exclude:{}, header:{}={}", includePrefixes, excludePrefixes,
+                headerName, headerValues);
+    }
+
+    private Counter filteredCounter(String reason) {
+        return Counter.builder("kafka.listener.filtered")
+                .description("解码前按原始字节过滤掉的消息数")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 过滤并解码，保留原消息的位置、时间戳和header
+     */
+    public List<ConsumerRecord<String, String>> decode(List<ConsumerRecord<byte[], byte[]>> records) {
+        return decode(records, null);
+    }
+
+    /**
+     * 过滤并解码，被过滤的原始消息放入 filtered（为null时不收集）
+     */
+    public List<ConsumerRecord<String, String>> decode(List<ConsumerRecord<byte[], byte[]>> records,
+                                                       List<ConsumerRecord<byte[], byte[]>> filtered) {
+        final List<ConsumerRecord<String, String>> decoded = new ArrayList<>(records.size());
+        int prefixDropped = 0;
+        int headerDropped = 0;
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            if (!matchesPrefix(record.value())) {
+                prefixDropped++;
+            } else if (!matchesHeader(record)) {
+                headerDropped++;
+            } else {
+                decoded.add(new ConsumerRecord<>(record.topic(), record.partition(), record.offset(), record.timestamp(),
+                        record.timestampType(), null, record.serializedKeySize(), record.serializedValueSize(),
+                        utf8(record.key()), utf8(record.value()), record.headers(), record.leaderEpoch()));
+                continue;
+            }
+            if (filtered != null) {
+                filtered.add(record);
+            }
+        }
+        if (prefixDropped > 0) {
+            prefixFiltered.increment(prefixDropped);
+        }
+        if (headerDropped > 0) {
+            headerFiltered.increment(headerDropped);
+        }
+        return decoded;
+    }
+
+    boolean matchesPrefix(byte[] value) {
+        if (includes.length > 0 && !startsWithAny(value, includes)) {
+            return false;
+        }
+        return excludes.length == 0 || !startsWithAny(value, excludes);
+    }
+
+    boolean matchesHeader(ConsumerRecord<byte[], byte[]> record) {
+        if (StringUtils.isEmpty(headerName)) {
+            return true;
+        }
+        final Header header = record.headers().lastHeader(headerName);
+        if (header == null || header.value() == null) {
+            return false;
+        }
+        for (byte[] accepted : acceptedHeaderValues) {
+            if (header.value().length == accepted.length && startsWith(header.value(), accepted)) {
+                return true;
+            }
+        }
+        return acceptedHeaderValues.length == 0;
+    }
+
+    private static boolean startsWithAny(byte[] value, byte[][] prefixes) {
+        if (value == null) {
+            return false;
+        }
+        for (byte[] prefix : prefixes) {
+            if (startsWith(value, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        if (value.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (value[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String utf8(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] bytes(String csv) {
+        final String[] values = StringUtils.split(StringUtils.defaultString(csv), ',');
+        final byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].trim().getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
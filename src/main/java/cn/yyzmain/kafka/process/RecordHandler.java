@@ -0,0 +1,20 @@
+package cn.yyzmain.kafka.process;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 单条消息的业务处理，由 {@link ShardedBatchProcessor} 在分片线程上调用
+ */
+@FunctionalInterface
+public interface RecordHandler {
+
+    void handle(ConsumerRecord<String, String> record) throws Exception;
+
+    /**
+     * 为true时由处理器自己在 {@link OffsetTracker} 中标记完成（如攒批落库后），调用方在handle返回后不再标记
+     */
+    default boolean completesAsync() {
+        return false;
+    }
+
+}
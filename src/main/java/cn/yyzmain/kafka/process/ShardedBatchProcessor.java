@@ -0,0 +1,154 @@
+package cn.yyzmain.kafka.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量消息分片并行处理
+ * <p>
+ * 有key的消息按key哈希到固定的单线程分片，同一key的消息始终在同一线程上按原顺序处理；
+ * key为空的消息没有顺序约束，按offset轮流分散到各分片；
+ * process() 等待所有分片处理完本批次后才返回，调用方随后再提交offset，批次之间不会交叠
+ */
+@Slf4j
+@Component
+public class ShardedBatchProcessor {
+
+    /**
+     * 分片数（即工作线程数），默认CPU核数
+     */
+    @Value("${app.kafka.process.shards:0}")
+    private int shardCount;
+
+    private ExecutorService[] shards;
+
+    @PostConstruct
+    public void init() {
+        if (shardCount <= 0) {
+            shardCount = Runtime.getRuntime().availableProcessors();
+        }
+        shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final String name = "record-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("==>>>消息分片处理线程数: {}", shardCount);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        for (ExecutorService shard : shards) {
+            shard.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 分片处理一个批次，全部处理完成后返回
+     *
+     * @return 处理失败的消息及异常，按分片内原顺序
+     */
+    public List<FailedRecord> process(List<ConsumerRecord<String, String>> records,
+                                                        RecordHandler handler) throws InterruptedException {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<List<ConsumerRecord<String, String>>> groups = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            groups.add(null);
+        }
+        int used = 0;
+        int lastShard = 0;
+        for (ConsumerRecord<String, String> record : records) {
+            final int shard = shardOf(record);
+            List<ConsumerRecord<String, String>> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.set(shard, group);
+                used++;
+                lastShard = shard;
+            }
+            group.add(record);
+        }
+        // 只落在一个分片时直接在当前线程处理，省去线程切换
+        if (used == 1) {
+            return handleAll(groups.get(lastShard), handler);
+        }
+
+        final List<Future<List<FailedRecord>>> futures = new ArrayList<>(used);
+        for (int i = 0; i < shardCount; i++) {
+            final List<ConsumerRecord<String, String>> group = groups.get(i);
+            if (group != null) {
+                futures.add(shards[i].submit(() -> handleAll(group, handler)));
+            }
+        }
+        final List<FailedRecord> failed = new ArrayList<>();
+        for (Future<List<FailedRecord>> future : futures) {
+            try {
+                failed.addAll(future.get());
+            } catch (ExecutionException e) {
+                // handleAll 内部已捕获单条异常，这里只会是Error
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return failed;
+    }
+
+    private static List<FailedRecord> handleAll(List<ConsumerRecord<String, String>> group, RecordHandler handler) {
+        List<FailedRecord> failed = Collections.emptyList();
+        for (ConsumerRecord<String, String> record : group) {
+            try {
+                handler.handle(record);
+            } catch (Exception e) {
+                log.error("处理异常，topic:{}, partition:{}, offset:{}, {}", record.topic(), record.partition(),
+                        record.offset(), e.getMessage(), e);
+                if (failed.isEmpty()) {
+                    failed = new ArrayList<>();
+                }
+                failed.add(new FailedRecord(record, e));
+            }
+        }
+        return failed;
+    }
+
+    int shardOf(ConsumerRecord<String, String> record) {
+        if (record.key() == null) {
+            // 同一分区连续的offset依次落到相邻分片，不同分区错开起点
+            final long offset = record.offset();
+            return (int) ((offset + record.partition()) % shardCount);
+        }
+        return (keyHash(record.key()) & Integer.MAX_VALUE) % shardCount;
+    }
+
+    /**
+     * 分片key的哈希，哈希相同的key一定在同一分片上，需要保持同key顺序的调用方（如 {@link LaneScheduler}）按它分组；
+     * key为空的消息不受此约束
+     */
+    static int keyHash(String key) {
+        final int hash = key.hashCode();
+        return hash ^ hash >>> 16;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+}
@@ -0,0 +1,172 @@
+package cn.yyzmain.kafka.product;
+
+import cn.yyzmain.kafka.config.ProducerProfile;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按档位切换的producer工厂：每个档位一个常驻producer，切换档位只改变后续发送使用的producer，切回时直接复用
+ * <p>
+ * 切换时先flush旧producer再启用新producer，flush期间的发送等待切换完成：
+ * 旧producer缓冲区里的消息不会晚于新producer上之后发送的消息到达broker，保持分区内、同key的顺序
+ */
+@Slf4j
+public class AdaptiveProducerFactory<K, V> implements ProducerFactory<K, V> {
+
+    private final Map<ProducerProfile, ProducerFactory<K, V>> delegates;
+
+    private volatile ProducerProfile active;
+
+    /**
+     * 发送持读锁，切换持写锁
+     */
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    private final Producer<K, V> producer = new SwitchingProducer();
+
+    public AdaptiveProducerFactory(Map<ProducerProfile, ProducerFactory<K, V>> delegates, ProducerProfile initial) {
+        this.delegates = new EnumMap<>(delegates);
+        this.active = initial;
+    }
+
+    public ProducerProfile getActive() {
+        return active;
+    }
+
+    public void switchTo(ProducerProfile profile) {
+        if (profile == active) {
+            return;
+        }
+        switchLock.writeLock().lock();
+        try {
+            final ProducerProfile previous = active;
+            if (profile == previous) {
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            delegates.get(previous).createProducer().flush();
+            active = profile;
+            log.info("==>>>producer档位切换: {} -> {}, flush:{}ms", previous, profile, System.currentTimeMillis() - start);
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    public ProducerFactory<K, V> getDelegate(ProducerProfile profile) {
+        return delegates.get(profile);
+    }
+
+    /**
+     * 返回按当前档位转发的producer，发送时才确定使用哪个档位
+     */
+    @Override
+    public Producer<K, V> createProducer() {
+        return producer;
+    }
+
+    @Override
+    public Map<String, Object> getConfigurationProperties() {
+        return delegates.get(active).getConfigurationProperties();
+    }
+
+    @Override
+    public void reset() {
+        delegates.values().forEach(ProducerFactory::reset);
+    }
+
+    private Producer<K, V> current() {
+        return delegates.get(active).createProducer();
+    }
+
+    /**
+     * 各档位的producer由各自的工厂管理，close不关闭它们
+     */
+    private final class SwitchingProducer implements Producer<K, V> {
+
+        @Override
+        public Future<RecordMetadata> send(ProducerRecord<K, V> record) {
+            return send(record, null);
+        }
+
+        @Override
+        public Future<RecordMetadata> send(ProducerRecord<K, V> record, Callback callback) {
+            switchLock.readLock().lock();
+            try {
+                return current().send(record, callback);
+            } finally {
+                switchLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void flush() {
+            current().flush();
+        }
+
+        @Override
+        public List<PartitionInfo> partitionsFor(String topic) {
+            return current().partitionsFor(topic);
+        }
+
+        @Override
+        public Map<MetricName, ? extends Metric> metrics() {
+            return current().metrics();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(Duration timeout) {
+        }
+
+        @Override
+        public void initTransactions() {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+
+        @Override
+        public void beginTransaction() {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+
+        @Override
+        public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, String consumerGroupId) {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+
+        @Override
+        public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, ConsumerGroupMetadata groupMetadata) {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+
+        @Override
+        public void commitTransaction() {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+
+        @Override
+        public void abortTransaction() {
+            throw new UnsupportedOperationException("adaptive producer is not transactional");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cn.yyzmain.kafka.product;
+
+import cn.yyzmain.kafka.config.ProducerProfile;
+import cn.yyzmain.kafka.config.ProducerProfileConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * producer自适应档位：定期观察发送速率和批次填充率，负载高时切到throughput档位用延迟换吞吐，负载回落后切回latency
+ * <p>
+ * 连续 switch-ticks 个周期满足条件才切换，避免在阈值附近来回抖动
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.kafka.producer.profile", havingValue = ProducerProfileConfig.ADAPTIVE)
+public class AdaptiveProducerTuner {
+
+    private static final String PRODUCER_METRICS = "producer-metrics";
+
+    private final AdaptiveProducerFactory<String, String> producerFactory;
+
+    private final ProducerProfileConfig profileConfig;
+
+    @Value("${app.kafka.producer.adaptive.interval-ms:5000}")
+    private long intervalMs;
+
+    /**
+     * 发送速率高于该值（条/秒）切到throughput
+     */
+    @Value("${app.kafka.producer.adaptive.up-rate:5000}")
+    private double upRate;
+
+    /**
+     * 发送速率低于该值（条/秒）切回latency
+     */
+    @Value("${app.kafka.producer.adaptive.down-rate:1000}")
+    private double downRate;
+
+    /**
+     * latency档位下批次填充率超过该值说明不等待也能凑满批次，切到throughput
+     */
+    @Value("${app.kafka.producer.adaptive.fill-ratio:0.8}")
+    private double fillRatio;
+
+    @Value("${app.kafka.producer.adaptive.switch-ticks:3}")
+    private int switchTicks;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "producer-tuner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int ticks;
+
+    /**
+     * 已经启用过的档位，只统计这些档位producer的发送量，避免为未使用的档位创建producer
+     */
+    private final Set<ProducerProfile> used = EnumSet.noneOf(ProducerProfile.class);
+
+    private double lastSendTotal;
+
+    @PostConstruct
+    public void start() {
+        used.add(producerFactory.getActive());
+        executor.scheduleWithFixedDelay(this::tune, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void tune() {
+        try {
+            final ProducerProfile active = producerFactory.getActive();
+            // 按两个档位producer的累计发送量计算本周期速率，切换后不受旧producer窗口速率影响
+            double sendTotal = 0;
+            for (ProducerProfile profile : used) {
+                sendTotal += metric(producerFactory.getDelegate(profile).createProducer().metrics(), "record-send-total");
+            }
+            final double rate = (sendTotal - lastSendTotal) * 1000 / intervalMs;
+            lastSendTotal = sendTotal;
+            final double fill = metric(producerFactory.createProducer().metrics(), "batch-size-avg")
+                    / profileConfig.batchSize(active);
+            final boolean shouldSwitch = active == ProducerProfile.LATENCY
+                    ? rate >= upRate || fill >= fillRatio
+                    : rate <= downRate;
+            ticks = shouldSwitch ? ticks + 1 : 0;
+            log.debug("==>>>producer档位:{}, 发送速率:{}/s, 批次填充率:{}", active, rate, fill);
+            if (ticks >= switchTicks) {
+                ticks = 0;
+                final ProducerProfile next = active == ProducerProfile.LATENCY ? ProducerProfile.THROUGHPUT : ProducerProfile.LATENCY;
+                used.add(next);
+                producerFactory.switchTo(next);
+            }
+        } catch (Exception e) {
+            log.warn("==>>>producer档位调整异常: {}", e.getMessage());
+        }
+    }
+
+    private static double metric(Map<MetricName, ? extends Metric> metrics, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+            if (name.equals(entry.getKey().name()) && PRODUCER_METRICS.equals(entry.getKey().group())) {
+                final Object value = entry.getValue().metricValue();
+                if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())) {
+                    return ((Number) value).doubleValue();
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -1,12 +1,29 @@
 package cn.yyzmain.kafka.product;
 
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.kafka.entity.BatchSendResult;
+import cn.yyzmain.kafka.spill.SpillJournal;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import org.springframework.util.concurrent.ListenableFuture;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -14,20 +31,201 @@ public class MainProduct {
 
     private final KafkaTemplate<String, String> kafkaTemplate;
 
+    private final KafkaTemplate<String, Student> studentKafkaTemplate;
+
+    private final SpillJournal spillJournal;
+
+    /**
+     * 批量发送等待broker确认的超时时间
+     */
+    @Value("${app.kafka.producer.batch-timeout-ms:30000}")
+    private long batchTimeoutMs;
+
+    /**
+     * 批量发送结果中最多保留的失败明细条数
+     */
+    @Value("${app.kafka.producer.batch-max-failure-details:100}")
+    private int maxFailureDetails;
+
+    /**
+     * 异步发送允许的最大在途消息数，超出直接拒绝，避免buffer.memory写满后阻塞tomcat线程
+     */
+    @Value("${app.kafka.producer.max-in-flight:10000}")
+    private int maxInFlight;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(maxInFlight);
+    }
+
     public void sendMessage(String topic, String msg) {
         log.info("开始发送kafka数据,topic:{}, msg:{}", topic, msg);
-        kafkaTemplate.send(topic, msg);
+        sendOrSpill(topic, msg);
         log.info("====================end=======================");
     }
 
     public void sendMessageCallback(String topic, String msg) {
         log.info("开始发送kafka数据,topic:{}, msg:{}", topic, msg);
-        ListenableFuture<SendResult<String, String>> result = kafkaTemplate.send(topic, msg);
+        final ListenableFuture<SendResult<String, String>> result;
+        try {
+            result = kafkaTemplate.send(topic, msg);
+        } catch (Exception e) {
+            log.error("==>>>消息发送失败!", e);
+            spill(topic, msg);
+            return;
+        }
         result.addCallback(sendResult -> log.info("==>>>消息发送成功..."), throwable -> {
             log.error("==>>>消息发送失败!", throwable);
-            // 兜底处理
-            result.isCancelled();
+            // 兜底处理：写入本地暂存，由SpillReplayer在producer恢复后重放
+            spill(topic, msg);
         });
         log.info("====================end=======================");
     }
+
+    /**
+     * 发送Student事件，value为二进制编码，key为studentId
+     */
+    public CompletableFuture<SendResult<String, Student>> sendStudent(String topic, Student student) {
+        log.info("开始发送kafka数据,topic:{}, student:{}", topic, student);
+        final String key = student.getStudentId() == null ? null : String.valueOf(student.getStudentId());
+        return studentKafkaTemplate.send(topic, key, student).completable();
+    }
+
+    /**
+     * 异步发送：返回的future在broker确认后完成；在途数超限时future以RejectedExecutionException失败
+     */
+    public CompletableFuture<SendResult<String, String>> sendMessageAsync(String topic, String msg) {
+        if (!inFlight.tryAcquire()) {
+            final CompletableFuture<SendResult<String, String>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RejectedExecutionException("in-flight limit " + maxInFlight + " reached"));
+            return rejected;
+        }
+        try {
+            final CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, msg).completable();
+            future.whenComplete((sendResult, throwable) -> inFlight.release());
+            return future;
+        } catch (Exception e) {
+            inFlight.release();
+            final CompletableFuture<SendResult<String, String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * 当前在途（已提交未确认）的异步发送数
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * 批量发送：所有消息连续投递给producer不做等待，统一flush后再汇总结果；
+     * 发送失败的写入本地暂存（计入spilled），超时未确认的在最终失败时再暂存（计入unconfirmed），
+     * 只有暂存也失败的计入failed，调用方只需重发failures中的消息
+     */
+    public BatchSendResult sendBatch(String topic, List<String> msgs) {
+        final long start = System.currentTimeMillis();
+        log.info("开始批量发送kafka数据,topic:{}, size:{}", topic, msgs.size());
+        final BatchSendResult batchResult = new BatchSendResult().setTotal(msgs.size());
+        final List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(msgs.size());
+        for (int i = 0; i < msgs.size(); i++) {
+            try {
+                futures.add(kafkaTemplate.send(topic, msgs.get(i)));
+            } catch (Exception e) {
+                // buffer.memory 满或元数据获取超时时send会直接抛异常
+                futures.add(null);
+                spillOrFail(batchResult, i, topic, msgs.get(i), e);
+            }
+        }
+        kafkaTemplate.flush();
+
+        final Map<Integer, BatchSendResult.PartitionSummary> partitions = new TreeMap<>();
+        final long deadline = System.currentTimeMillis() + batchTimeoutMs;
+        for (int i = 0; i < futures.size(); i++) {
+            final ListenableFuture<SendResult<String, String>> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            try {
+                final long waitMs = Math.max(0, deadline - System.currentTimeMillis());
+                final RecordMetadata metadata = future.get(waitMs, TimeUnit.MILLISECONDS).getRecordMetadata();
+                final BatchSendResult.PartitionSummary summary = partitions.computeIfAbsent(metadata.partition(),
+                        p -> new BatchSendResult.PartitionSummary().setPartition(p));
+                summary.setCount(summary.getCount() + 1);
+                summary.setMinOffset(Math.min(summary.getMinOffset(), metadata.offset()));
+                summary.setMaxOffset(Math.max(summary.getMaxOffset(), metadata.offset()));
+                batchResult.setSuccess(batchResult.getSuccess() + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unconfirmed(batchResult, future, topic, msgs.get(i));
+            } catch (TimeoutException e) {
+                unconfirmed(batchResult, future, topic, msgs.get(i));
+            } catch (ExecutionException e) {
+                spillOrFail(batchResult, i, topic, msgs.get(i), e.getCause());
+            } catch (Exception e) {
+                spillOrFail(batchResult, i, topic, msgs.get(i), e);
+            }
+        }
+        batchResult.getPartitions().addAll(partitions.values());
+        batchResult.setCostMs(System.currentTimeMillis() - start);
+        log.info("==>>>批量发送完成,topic:{}, total:{}, success:{}, spilled:{}, unconfirmed:{}, failed:{}, cost:{}ms", topic,
+                batchResult.getTotal(), batchResult.getSuccess(), batchResult.getSpilled(), batchResult.getUnconfirmed(),
+                batchResult.getFailed(), batchResult.getCostMs());
+        return batchResult;
+    }
+
+    /**
+     * 确认失败：写入本地暂存，暂存也失败时才算丢失
+     */
+    private void spillOrFail(BatchSendResult batchResult, int index, String topic, String msg, Throwable e) {
+        if (spill(topic, msg)) {
+            batchResult.setSpilled(batchResult.getSpilled() + 1);
+        } else {
+            addFailure(batchResult, index, e);
+        }
+    }
+
+    /**
+     * 未等到确认：原发送仍在进行，最终失败时再写入本地暂存，避免与成功的原发送重复
+     */
+    private void unconfirmed(BatchSendResult batchResult, ListenableFuture<SendResult<String, String>> future,
+                             String topic, String msg) {
+        batchResult.setUnconfirmed(batchResult.getUnconfirmed() + 1);
+        future.addCallback(sendResult -> {
+        }, throwable -> spill(topic, msg));
+    }
+
+    /**
+     * 发送，失败（含send直接抛出异常）时写入本地暂存
+     */
+    private ListenableFuture<SendResult<String, String>> sendOrSpill(String topic, String msg) {
+        final ListenableFuture<SendResult<String, String>> future;
+        try {
+            future = kafkaTemplate.send(topic, msg);
+        } catch (RuntimeException e) {
+            spill(topic, msg);
+            throw e;
+        }
+        future.addCallback(sendResult -> {
+        }, throwable -> spill(topic, msg));
+        return future;
+    }
+
+    private boolean spill(String topic, String msg) {
+        if (!spillJournal.append(topic, null, msg)) {
+            log.error("==>>>消息暂存失败，消息丢失,topic:{}, msg:{}", topic, msg);
+            return false;
+        }
+        return true;
+    }
+
+    private void addFailure(BatchSendResult batchResult, int index, Throwable e) {
+        batchResult.setFailed(batchResult.getFailed() + 1);
+        if (batchResult.getFailures().size() < maxFailureDetails) {
+            batchResult.getFailures().add(new BatchSendResult.Failure().setIndex(index).setError(String.valueOf(e)));
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package cn.yyzmain.kafka.retry;
+
+import cn.yyzmain.kafka.process.FailedRecord;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 处理失败的消息发往下一级重试主题，重试次数用尽后发往死信主题，不阻塞原分区
+ * <p>
+ * 头信息记录原始主题/分区/offset、异常、已重试次数和到期时间；发布成功后在 {@link OffsetTracker} 中标记完成
+ */
+@Slf4j
+@Component
+public class RetryPublisher {
+
+    public static final String HEADER_ORIGINAL_TOPIC = "x-original-topic";
+    public static final String HEADER_ORIGINAL_PARTITION = "x-original-partition";
+    public static final String HEADER_ORIGINAL_OFFSET = "x-original-offset";
+    public static final String HEADER_EXCEPTION = "x-exception";
+    public static final String HEADER_ATTEMPT = "x-attempt";
+    public static final String HEADER_DUE_AT = "x-due-at";
+
+    private static final int MAX_EXCEPTION_LENGTH = 1024;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final RetryTopics retryTopics;
+
+    private final OffsetTracker offsetTracker;
+
+    @Value("${app.kafka.retry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.kafka.retry.publish-timeout-ms:10000}")
+    private long publishTimeoutMs;
+
+    public RetryPublisher(KafkaTemplate<String, String> kafkaTemplate, RetryTopics retryTopics, OffsetTracker offsetTracker) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryTopics = retryTopics;
+        this.offsetTracker = offsetTracker;
+    }
+
+    /**
+     * 发布失败消息并等待broker确认
+     *
+     * @return 未能发布的消息，调用方需回退重新消费
+     */
+    public List<ConsumerRecord<String, String>> publish(List<FailedRecord> failures) {
+        final List<ConsumerRecord<String, String>> unpublished = new ArrayList<>();
+        if (!enabled) {
+            failures.forEach(failure -> unpublished.add(failure.getRecord()));
+            return unpublished;
+        }
+        final List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(failures.size());
+        for (FailedRecord failure : failures) {
+            try {
+                futures.add(kafkaTemplate.send(next(failure.getRecord(), failure.getException())));
+            } catch (Exception e) {
+                log.error("==>>>重试消息发送失败,{}", failure.getRecord(), e);
+                futures.add(null);
+            }
+        }
+        kafkaTemplate.flush();
+        final long deadline = System.currentTimeMillis() + publishTimeoutMs;
+        for (int i = 0; i < failures.size(); i++) {
+            final ConsumerRecord<String, String> record = failures.get(i).getRecord();
+            final ListenableFuture<SendResult<String, String>> future = futures.get(i);
+            try {
+                if (future != null) {
+                    final SendResult<String, String> result = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    log.warn("==>>>消息已转入{},原始位置:{}-{}@{}", result.getRecordMetadata().topic(), record.topic(),
+                            record.partition(), record.offset());
+                    offsetTracker.complete(record);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("==>>>重试消息发送失败,{}", record, e);
+            }
+            unpublished.add(record);
+        }
+        return unpublished;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 构造下一级重试或死信消息
+     */
+    ProducerRecord<String, String> next(ConsumerRecord<String, String> record, Exception exception) {
+        final int attempt = intHeader(record.headers(), HEADER_ATTEMPT, 0);
+        final String originalTopic = stringHeader(record.headers(), HEADER_ORIGINAL_TOPIC, record.topic());
+        final ProducerRecord<String, String> next;
+        if (attempt < retryTopics.tiers()) {
+            next = new ProducerRecord<>(retryTopics.retryTopic(originalTopic, attempt), record.key(), record.value());
+            next.headers().add(HEADER_DUE_AT, bytes(String.valueOf(System.currentTimeMillis() + retryTopics.delayMs(attempt))));
+        } else {
+            next = new ProducerRecord<>(retryTopics.dlqTopic(originalTopic), record.key(), record.value());
+        }
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith("x-")) {
+                next.headers().add(header);
+            }
+        }
+        final Headers headers = next.headers();
+        headers.add(HEADER_ORIGINAL_TOPIC, bytes(originalTopic));
+        headers.add(HEADER_ORIGINAL_PARTITION, bytes(stringHeader(record.headers(), HEADER_ORIGINAL_PARTITION, String.valueOf(record.partition()))));
+        headers.add(HEADER_ORIGINAL_OFFSET, bytes(stringHeader(record.headers(), HEADER_ORIGINAL_OFFSET, String.valueOf(record.offset()))));
+        headers.add(HEADER_EXCEPTION, bytes(StringUtils.abbreviate(String.valueOf(exception), MAX_EXCEPTION_LENGTH)));
+        headers.add(HEADER_ATTEMPT, bytes(String.valueOf(attempt + 1)));
+        return next;
+    }
+
+    /**
+     * 重试消息的到期时间，非重试消息返回0
+     */
+    public static long dueAt(ConsumerRecord<?, ?> record) {
+        final Header header = record.headers().lastHeader(HEADER_DUE_AT);
+        return header == null ? 0 : Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    private static int intHeader(Headers headers, String key, int defaultValue) {
+        final Header header = headers.lastHeader(key);
+        return header == null ? defaultValue : Integer.parseInt(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    private static String stringHeader(Headers headers, String key, String defaultValue) {
+        final Header header = headers.lastHeader(key);
+        return header == null ? defaultValue : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
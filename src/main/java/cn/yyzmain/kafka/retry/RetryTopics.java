@@ -0,0 +1,94 @@
+package cn.yyzmain.kafka.retry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分级重试主题：{@code <topic>.retry.<延迟ms>}，最后一级之后进入 {@code <topic>.dlq}
+ * <p>
+ * 启动时创建缺失的重试主题和死信主题
+ */
+@Slf4j
+@Component
+public class RetryTopics {
+
+    public static final String RETRY_INFIX = ".retry.";
+    public static final String DLQ_SUFFIX = ".dlq";
+
+    private final KafkaAdmin kafkaAdmin;
+
+    @Value("${app.main.yyzmain:yyzmain}")
+    private String mainTopic;
+    /**
+     * 各级重试延迟：ms
+     */
+    @Value("${app.kafka.retry.delays-ms:1000,10000,60000}")
+    private long[] delaysMs;
+    @Value("${app.kafka.retry.partitions:3}")
+    private int partitions;
+    @Value("${app.kafka.retry.replicas:1}")
+    private short replicas;
+
+    public RetryTopics(KafkaAdmin kafkaAdmin) {
+        this.kafkaAdmin = kafkaAdmin;
+    }
+
+    @PostConstruct
+    public void createTopics() {
+        final List<String> names = new ArrayList<>(retryTopicNames());
+        names.add(dlqTopic(mainTopic));
+        try (AdminClient adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            final Set<String> existing = adminClient.listTopics().names().get(30, TimeUnit.SECONDS);
+            final List<NewTopic> missing = new ArrayList<>();
+            for (String name : names) {
+                if (!existing.contains(name)) {
+                    missing.add(new NewTopic(name, partitions, replicas));
+                }
+            }
+            if (!missing.isEmpty()) {
+                adminClient.createTopics(missing).all().get(30, TimeUnit.SECONDS);
+                log.info("==>>>已创建重试主题: {}", missing);
+            }
+        } catch (Exception e) {
+            // broker不可用时不影响启动，依赖broker自动建主题
+            log.error("==>>>重试主题创建失败,{}", names, e);
+        }
+    }
+
+    /**
+     * 主监听主题的各级重试主题，供重试监听器订阅
+     */
+    public List<String> retryTopicNames() {
+        final List<String> names = new ArrayList<>(delaysMs.length);
+        for (int tier = 0; tier < delaysMs.length; tier++) {
+            names.add(retryTopic(mainTopic, tier));
+        }
+        return names;
+    }
+
+    public String retryTopic(String topic, int tier) {
+        return topic + RETRY_INFIX + delaysMs[tier];
+    }
+
+    public String dlqTopic(String topic) {
+        return topic + DLQ_SUFFIX;
+    }
+
+    public int tiers() {
+        return delaysMs.length;
+    }
+
+    public long delayMs(int tier) {
+        return delaysMs[tier];
+    }
+}
@@ -0,0 +1,187 @@
+package cn.yyzmain.kafka.serialization;
+
+import cn.yyzmain.h2.entity.Student;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Student 紧凑二进制编码
+ * <p>
+ * 格式（版本1）：[byte 版本][byte 字段存在标记][studentId][studentName][gender][age]，
+ * 整数为zigzag varint，字符串为 varint字节长度 + UTF-8，空字段不写入。
+ * 编码使用线程本地缓冲区，每次序列化只分配最终结果数组
+ */
+public final class StudentCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_ID = 1;
+    private static final int FLAG_NAME = 1 << 1;
+    private static final int FLAG_GENDER = 1 << 2;
+    private static final int FLAG_AGE = 1 << 3;
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private StudentCodec() {
+    }
+
+    public static byte[] encode(Student student) {
+        if (student == null) {
+            return null;
+        }
+        final Buffer buffer = BUFFER.get();
+        buffer.position = 0;
+        final String name = student.getStudentName();
+        buffer.put(VERSION);
+        buffer.put((byte) ((student.getStudentId() != null ? FLAG_ID : 0)
+                | (name != null ? FLAG_NAME : 0)
+                | (student.getGender() != null ? FLAG_GENDER : 0)
+                | (student.getAge() != null ? FLAG_AGE : 0)));
+        if (student.getStudentId() != null) {
+            buffer.putVarint(zigzag(student.getStudentId()));
+        }
+        if (name != null) {
+            buffer.putVarint(utf8Length(name));
+            buffer.putUtf8(name);
+        }
+        if (student.getGender() != null) {
+            buffer.putVarint(zigzag(student.getGender()));
+        }
+        if (student.getAge() != null) {
+            buffer.putVarint(zigzag(student.getAge()));
+        }
+        return Arrays.copyOf(buffer.bytes, buffer.position);
+    }
+
+    public static Student decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length < 2) {
+            throw new SerializationException("student payload too short: " + data.length);
+        }
+        if (data[0] != VERSION) {
+            throw new SerializationException("unsupported student schema version: " + data[0]);
+        }
+        final int flags = data[1];
+        final int[] position = {2};
+        final Student student = new Student();
+        try {
+            if ((flags & FLAG_ID) != 0) {
+                student.setStudentId(unzigzag(readVarint(data, position)));
+            }
+            if ((flags & FLAG_NAME) != 0) {
+                final int length = readVarint(data, position);
+                if (length < 0 || position[0] + length > data.length) {
+                    throw new SerializationException("invalid student name length: " + length);
+                }
+                student.setStudentName(new String(data, position[0], length, StandardCharsets.UTF_8));
+                position[0] += length;
+            }
+            if ((flags & FLAG_GENDER) != 0) {
+                student.setGender(unzigzag(readVarint(data, position)));
+            }
+            if ((flags & FLAG_AGE) != 0) {
+                student.setAge(unzigzag(readVarint(data, position)));
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("truncated student payload", e);
+        }
+        return student;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = data[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("malformed varint");
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符按'?'编码
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static final class Buffer {
+
+        private byte[] bytes = new byte[256];
+
+        private int position;
+
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            bytes[position++] = b;
+        }
+
+        private void putVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        private void putUtf8(String value) {
+            ensure(value.length() * 3);
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[position++] = (byte) (0xc0 | (c >> 6));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[position++] = '?';
+                } else {
+                    bytes[position++] = (byte) (0xe0 | (c >> 12));
+                    bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package cn.yyzmain.kafka.serialization;
+
+import cn.yyzmain.h2.entity.Student;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Student 二进制反序列化，格式见 {@link StudentCodec}
+ */
+public class StudentDeserializer implements Deserializer<Student> {
+
+    @Override
+    public Student deserialize(String topic, byte[] data) {
+        return StudentCodec.decode(data);
+    }
+
+}
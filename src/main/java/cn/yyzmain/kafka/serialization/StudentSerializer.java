@@ -0,0 +1,16 @@
+package cn.yyzmain.kafka.serialization;
+
+import cn.yyzmain.h2.entity.Student;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Student 二进制序列化，格式见 {@link StudentCodec}
+ */
+public class StudentSerializer implements Serializer<Student> {
+
+    @Override
+    public byte[] serialize(String topic, Student data) {
+        return StudentCodec.encode(data);
+    }
+
+}
@@ -0,0 +1,178 @@
+package cn.yyzmain.kafka.sink;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.service.StudentBatchService;
+import cn.yyzmain.kafka.process.FailedRecord;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import cn.yyzmain.kafka.process.RecordHandler;
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import cn.yyzmain.kafka.serialization.StudentCodec;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消费消息写入student表：解码后攒批，按条数或时间触发一次事务内的批量MERGE
+ * <p>
+ * 消息只有在所在批次提交成功后才在 {@link OffsetTracker} 中标记完成，kafka offset不会越过未落库的消息；
+ * 整批失败时逐条重写定位问题数据，写不进去的消息转入重试主题；
+ * 只接受JSON格式，监听器按字符串消费，{@link StudentCodec} 二进制编码的消息无法无损还原，按首字节识别后直接拒绝
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.kafka.sink.student.enabled", havingValue = "true")
+public class StudentSink implements RecordHandler {
+
+    private final StudentBatchService studentBatchService;
+
+    private final OffsetTracker offsetTracker;
+
+    private final RetryPublisher retryPublisher;
+
+    private final Gson gson = new Gson();
+
+    @Value("${app.kafka.sink.student.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.kafka.sink.student.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    private final Object bufferLock = new Object();
+    private List<ConsumerRecord<String, String>> records = new ArrayList<>();
+    private List<Student> students = new ArrayList<>();
+
+    /**
+     * 写库串行进行，保证同一学生的多次更新按消费顺序落库
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService scheduler;
+
+    public StudentSink(StudentBatchService studentBatchService, OffsetTracker offsetTracker, RetryPublisher retryPublisher) {
+        this.studentBatchService = studentBatchService;
+        this.offsetTracker = offsetTracker;
+        this.retryPublisher = retryPublisher;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "student-sink");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        flushQuietly();
+    }
+
+    @Override
+    public void handle(ConsumerRecord<String, String> record) {
+        final Student student = decode(record);
+        final boolean full;
+        synchronized (bufferLock) {
+            records.add(record);
+            students.add(student);
+            full = students.size() >= batchSize;
+        }
+        if (full) {
+            // 攒满时由写入线程直接落库，库写得慢时自然形成背压
+            flush();
+        }
+    }
+
+    @Override
+    public boolean completesAsync() {
+        return true;
+    }
+
+    private Student decode(ConsumerRecord<String, String> record) {
+        final String value = record.value();
+        if (value != null && !value.isEmpty() && value.charAt(0) == StudentCodec.VERSION) {
+            throw new IllegalArgumentException("binary student payload is not supported, send student as json");
+        }
+        final Student student;
+        try {
+            student = gson.fromJson(value, Student.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("invalid student json: " + e.getMessage(), e);
+        }
+        if (student == null || student.getStudentId() == null) {
+            throw new IllegalArgumentException("student id is required");
+        }
+        return student;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("==>>>student批量写入异常", e);
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            final List<ConsumerRecord<String, String>> batchRecords;
+            final List<Student> batchStudents;
+            synchronized (bufferLock) {
+                if (students.isEmpty()) {
+                    return;
+                }
+                batchRecords = records;
+                batchStudents = students;
+                records = new ArrayList<>(batchSize);
+                students = new ArrayList<>(batchSize);
+            }
+            write(batchRecords, batchStudents);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<ConsumerRecord<String, String>> batchRecords, List<Student> batchStudents) {
+        final long start = System.currentTimeMillis();
+        try {
+            studentBatchService.mergeBatch(batchStudents);
+            batchRecords.forEach(offsetTracker::complete);
+            log.debug("==>>>student批量写入{}条, cost:{}ms", batchStudents.size(), System.currentTimeMillis() - start);
+            return;
+        } catch (Exception e) {
+            log.error("==>>>student批量写入失败，改为逐条写入,size:{}", batchStudents.size(), e);
+        }
+        final List<FailedRecord> failed = new ArrayList<>();
+        for (int i = 0; i < batchStudents.size(); i++) {
+            try {
+                studentBatchService.merge(batchStudents.get(i));
+                offsetTracker.complete(batchRecords.get(i));
+            } catch (Exception e) {
+                failed.add(new FailedRecord(batchRecords.get(i), e));
+            }
+        }
+        if (!failed.isEmpty()) {
+            // 发布失败的消息保持未完成，offset停在这里，重启或重平衡后重新消费
+            final List<ConsumerRecord<String, String>> unpublished = retryPublisher.publish(failed);
+            if (!unpublished.isEmpty()) {
+                log.error("==>>>student写入失败且未能转入重试主题,{}条", unpublished.size());
+            }
+        }
+    }
+}
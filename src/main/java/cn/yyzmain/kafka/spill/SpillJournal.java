@@ -0,0 +1,396 @@
+package cn.yyzmain.kafka.spill;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 发送失败消息的本地暂存日志（内存映射的分段追加文件）
+ * <p>
+ * 记录格式：[int 长度][int crc32][body]，body = [short topic长度][topic][int key长度|-1][key][int value长度|-1][value]。
+ * 长度字段最后写入，长度为0表示段内数据结束；crc校验不通过的记录及其后的段内数据会被跳过。
+ * 单写多段、单读：append 可并发调用，peek/commit 只允许重放线程调用。
+ */
+@Slf4j
+public class SpillJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".spill";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    /**
+     * 记录头：长度(4) + crc(4)
+     */
+    private static final int HEADER_BYTES = 8;
+
+    private final File dir;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    /**
+     * 段序号 -> 段
+     */
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final CRC32 writeCrc = new CRC32();
+    private final CRC32 readCrc = new CRC32();
+
+    private volatile Segment writeSegment;
+    private MappedByteBuffer checkpoint;
+    private FileChannel checkpointChannel;
+
+    /**
+     * 读取游标，只由重放线程维护
+     */
+    private volatile long readSegment;
+    private volatile int readPosition;
+
+    public SpillJournal(File dir, int segmentBytes, long maxBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 打开日志：恢复已有段的写入位置和读取游标
+     */
+    public synchronized void open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create spill dir " + dir);
+        }
+        final File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                final long seq = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                final Segment segment = new Segment(seq, file, (int) file.length());
+                segment.writePosition = recover(segment);
+                segment.sealed = true;
+                segments.put(seq, segment);
+                totalBytes.addAndGet(segment.capacity);
+            }
+        }
+        if (segments.isEmpty()) {
+            writeSegment = createSegment(0, segmentBytes);
+        } else {
+            writeSegment = segments.lastEntry().getValue();
+            writeSegment.sealed = false;
+        }
+
+        checkpointChannel = new RandomAccessFile(new File(dir, CHECKPOINT_FILE), "rw").getChannel();
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        final long seq = checkpoint.getLong(0);
+        final int pos = checkpoint.getInt(8);
+        final Segment segment = segments.get(seq);
+        if (segment != null) {
+            readSegment = seq;
+            readPosition = Math.min(pos, segment.writePosition);
+        } else {
+            readSegment = segments.firstKey();
+            readPosition = 0;
+        }
+        log.info("==>>>spill journal opened, dir:{}, segments:{}, read:{}@{}, write:{}@{}", dir, segments.size(),
+                readSegment, readPosition, writeSegment.seq, writeSegment.writePosition);
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @return 暂存日志已满时返回false
+     */
+    public synchronized boolean append(String topic, String key, String value) {
+        final byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = 2 + topicBytes.length + 4 + length(keyBytes) + 4 + length(valueBytes);
+        final int recordLength = HEADER_BYTES + bodyLength;
+
+        Segment segment = writeSegment;
+        if (segment.writePosition + recordLength > segment.capacity) {
+            segment = rotate(recordLength);
+            if (segment == null) {
+                return false;
+            }
+        }
+        final int position = segment.writePosition;
+        final ByteBuffer buffer = segment.buffer;
+        buffer.position(position + HEADER_BYTES);
+        buffer.putShort((short) topicBytes.length).put(topicBytes);
+        putBytes(buffer, keyBytes);
+        putBytes(buffer, valueBytes);
+
+        final ByteBuffer body = buffer.duplicate();
+        body.limit(position + recordLength).position(position + HEADER_BYTES);
+        writeCrc.reset();
+        writeCrc.update(body);
+        buffer.putInt(position + 4, (int) writeCrc.getValue());
+        // 长度最后写入，未写完的记录对读取方不可见
+        buffer.putInt(position, bodyLength);
+        segment.writePosition = position + recordLength;
+        return true;
+    }
+
+    /**
+     * 从读取游标开始读取最多max条消息，不移动游标
+     */
+    public List<SpillRecord> peek(int max) {
+        final List<SpillRecord> records = new ArrayList<>(Math.min(max, 1024));
+        long seq = readSegment;
+        int position = readPosition;
+        while (records.size() < max) {
+            final Segment segment = segments.get(seq);
+            if (segment == null) {
+                break;
+            }
+            // 先读sealed再读写入位置，保证看到已封段的最终长度
+            final boolean sealed = segment.sealed;
+            final int end = segment.writePosition;
+            if (position + HEADER_BYTES > end) {
+                final Long next = sealed ? segments.higherKey(seq) : null;
+                if (next == null) {
+                    break;
+                }
+                seq = next;
+                position = 0;
+                if (records.isEmpty()) {
+                    commit(seq, position);
+                }
+                continue;
+            }
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            final int bodyLength = buffer.getInt(position);
+            final int crc = buffer.getInt(position + 4);
+            final int recordEnd = position + HEADER_BYTES + bodyLength;
+            if (bodyLength <= 0 || recordEnd > end || !checksum(buffer, position + HEADER_BYTES, recordEnd, crc)) {
+                if (!records.isEmpty()) {
+                    break;
+                }
+                log.error("==>>>spill journal record corrupted, skip rest of segment {} from {}", seq, position);
+                position = end;
+                commit(seq, position);
+                continue;
+            }
+            buffer.position(position + HEADER_BYTES);
+            final byte[] topicBytes = new byte[buffer.getShort()];
+            buffer.get(topicBytes);
+            final String key = getString(buffer);
+            final String value = getString(buffer);
+            position = recordEnd;
+            records.add(new SpillRecord(new String(topicBytes, StandardCharsets.UTF_8), key, value, seq, position));
+        }
+        return records;
+    }
+
+    /**
+     * 确认消息已重放，读取游标移到该记录之后
+     */
+    public void commit(SpillRecord record) {
+        commit(record.getSegment(), record.getNextPosition());
+    }
+
+    /**
+     * 是否还有待重放的消息
+     */
+    public boolean isEmpty() {
+        final Segment segment = writeSegment;
+        return readSegment == segment.seq && readPosition >= segment.writePosition;
+    }
+
+    /**
+     * 已占用的磁盘空间：byte
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * 刷盘
+     */
+    public synchronized void flush() {
+        writeSegment.buffer.force();
+        if (checkpoint != null) {
+            checkpoint.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        unmap(checkpoint);
+        closeQuietly(checkpointChannel);
+        checkpoint = null;
+    }
+
+    private void commit(long seq, int position) {
+        readSegment = seq;
+        readPosition = position;
+        checkpoint.putLong(0, seq);
+        checkpoint.putInt(8, position);
+        // 之前的段已全部重放完毕，删除
+        for (Map.Entry<Long, Segment> entry = segments.firstEntry(); entry != null && entry.getKey() < seq;
+             entry = segments.firstEntry()) {
+            segments.remove(entry.getKey());
+            entry.getValue().close();
+            totalBytes.addAndGet(-entry.getValue().capacity);
+            if (!entry.getValue().file.delete()) {
+                log.warn("==>>>spill segment delete failed: {}", entry.getValue().file);
+            }
+        }
+    }
+
+    private Segment rotate(int recordLength) {
+        final int capacity = Math.max(segmentBytes, recordLength);
+        if (totalBytes.get() + capacity > maxBytes) {
+            log.error("==>>>spill journal is full ({} bytes), message dropped", totalBytes.get());
+            return null;
+        }
+        final Segment current = writeSegment;
+        try {
+            final Segment next = createSegment(current.seq + 1, capacity);
+            current.buffer.force();
+            current.sealed = true;
+            writeSegment = next;
+            return next;
+        } catch (IOException e) {
+            log.error("==>>>spill segment create failed, message dropped", e);
+            return null;
+        }
+    }
+
+    private Segment createSegment(long seq, int capacity) throws IOException {
+        final Segment segment = new Segment(seq, new File(dir, String.format("%020d%s", seq, SEGMENT_SUFFIX)), capacity);
+        segments.put(seq, segment);
+        totalBytes.addAndGet(capacity);
+        return segment;
+    }
+
+    /**
+     * 扫描段内数据，返回最后一条完整记录之后的位置
+     */
+    private int recover(Segment segment) {
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_BYTES <= segment.capacity) {
+            final int bodyLength = buffer.getInt(position);
+            final int recordEnd = position + HEADER_BYTES + bodyLength;
+            if (bodyLength <= 0 || recordEnd > segment.capacity) {
+                break;
+            }
+            if (!checksum(buffer, position + HEADER_BYTES, recordEnd, buffer.getInt(position + 4))) {
+                log.warn("==>>>spill segment {} truncated at {} by checksum", segment.seq, position);
+                break;
+            }
+            position = recordEnd;
+        }
+        return position;
+    }
+
+    private boolean checksum(ByteBuffer buffer, int from, int to, int expected) {
+        final ByteBuffer body = buffer.duplicate();
+        body.limit(to).position(from);
+        readCrc.reset();
+        readCrc.update(body);
+        return (int) readCrc.getValue() == expected;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            log.warn("==>>>close error", e);
+        }
+    }
+
+    /**
+     * 释放内存映射，否则在windows下段文件无法删除
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            // jdk8
+            try {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (Exception ex) {
+                log.warn("==>>>unmap error", ex);
+            }
+        } catch (Exception e) {
+            log.warn("==>>>unmap error", e);
+        }
+    }
+
+    private static final class Segment {
+
+        private final long seq;
+        private final File file;
+        private final int capacity;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private volatile int writePosition;
+        private volatile boolean sealed;
+
+        private Segment(long seq, File file, int capacity) throws IOException {
+            this.seq = seq;
+            this.file = file;
+            this.capacity = capacity;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        private void close() {
+            unmap(buffer);
+            closeQuietly(channel);
+        }
+    }
+}
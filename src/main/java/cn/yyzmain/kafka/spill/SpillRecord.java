@@ -0,0 +1,29 @@
+package cn.yyzmain.kafka.spill;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 暂存日志中的一条消息
+ */
+@Getter
+@RequiredArgsConstructor
+public class SpillRecord {
+
+    private final String topic;
+
+    private final String key;
+
+    private final String value;
+
+    /**
+     * 所在段序号
+     */
+    private final long segment;
+
+    /**
+     * 该条记录之后的读取位置
+     */
+    private final int nextPosition;
+
+}
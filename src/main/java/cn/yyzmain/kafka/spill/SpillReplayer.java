@@ -0,0 +1,100 @@
+package cn.yyzmain.kafka.spill;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 暂存日志重放：按写入顺序把暂存的消息重新发送到kafka
+ * <p>
+ * 每个周期最多重放 rate * interval 条，发送失败后指数退避，避免broker恢复时形成重试风暴
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpillReplayer {
+
+    private final SpillJournal spillJournal;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    @Value("${app.kafka.spill.replay-interval-ms:200}")
+    private long intervalMs;
+
+    /**
+     * 每秒最多重放条数
+     */
+    @Value("${app.kafka.spill.replay-rate:500}")
+    private int replayRate;
+
+    @Value("${app.kafka.spill.replay-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.kafka.spill.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "spill-replayer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long backoffMs;
+    private long nextAttemptAt;
+
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::replay, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(sendTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void replay() {
+        try {
+            spillJournal.flush();
+            if (spillJournal.isEmpty() || System.currentTimeMillis() < nextAttemptAt) {
+                return;
+            }
+            final int budget = (int) Math.max(1, replayRate * intervalMs / 1000);
+            final List<SpillRecord> records = spillJournal.peek(budget);
+            if (records.isEmpty()) {
+                return;
+            }
+            final List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(records.size());
+            for (SpillRecord record : records) {
+                futures.add(kafkaTemplate.send(record.getTopic(), record.getKey(), record.getValue()));
+            }
+            kafkaTemplate.flush();
+            // 只推进到连续成功的位置，之后成功的消息下次会被再次发送（至少一次）
+            int replayed = 0;
+            for (ListenableFuture<SendResult<String, String>> future : futures) {
+                future.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                spillJournal.commit(records.get(replayed++));
+            }
+            backoffMs = 0;
+            log.info("==>>>暂存消息重放成功: {}条", replayed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            backoffMs = backoffMs == 0 ? 1000 : Math.min(backoffMs * 2, maxBackoffMs);
+            nextAttemptAt = System.currentTimeMillis() + backoffMs;
+            log.warn("==>>>暂存消息重放失败，{}ms后重试: {}", backoffMs, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cn.yyzmain.zk.listener;
+
+import cn.yyzmain.kafka.config.PartitionRouteRegistry;
+import cn.yyzmain.kafka.config.PartitionRouteTable;
+import cn.yyzmain.zk.config.ZkBootStrap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 分区路由表监听器：监听zk节点，节点内容变化时解析为新的路由表并发布给分区器
+ * <p>
+ * 节点内容格式同 main.partitioner.routes，例如 {@code a-:0,b-:1,hot-:5}；节点删除后恢复使用producer配置中的路由表
+ */
+@Component
+@Slf4j
+public class PartitionRouteListener implements CommandLineRunner {
+
+    @Value("${zk.partitionRouteNode:/kafka/partitioner/routes}")
+    private String routeNodeName;
+
+    private volatile NodeCache routeCache;
+
+    @Override
+    public void run(String... args) {
+        log.info("开启分区路由节点监听---{}", routeNodeName);
+        try {
+            routeCache = ZkBootStrap.ZK.addListener(routeNodeName, this::onRouteChanged);
+            onRouteChanged();
+        } catch (Exception e) {
+            log.error("分区路由节点监听异常！", e);
+        }
+    }
+
+    private void onRouteChanged() {
+        final NodeCache cache = routeCache;
+        if (cache == null) {
+            return;
+        }
+        final ChildData data = cache.getCurrentData();
+        if (data == null || data.getData() == null || data.getData().length == 0) {
+            if (PartitionRouteRegistry.current() != null) {
+                log.info("分区路由节点已删除，恢复使用默认路由表");
+                PartitionRouteRegistry.clear();
+            }
+            return;
+        }
+        final String routes = new String(data.getData(), StandardCharsets.UTF_8);
+        try {
+            final PartitionRouteTable table = PartitionRouteTable.parse(routes);
+            PartitionRouteRegistry.publish(table);
+            log.info("分区路由表已更新: {}", table);
+        } catch (IllegalArgumentException e) {
+            log.error("分区路由配置格式错误，保留原路由表: {}", routes, e);
+        }
+    }
+}
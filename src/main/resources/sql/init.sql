@@ -8,4 +8,15 @@ CREATE TABLE `student`
     `gender`       int(1)       NOT NULL,
     `age`          int(3)           NOT NULL,
     PRIMARY KEY (`student_id`)
+) ;
+DROP TABLE IF EXISTS `window_aggregate`;
+CREATE TABLE `window_aggregate`
+(
+    `window_type`     varchar(16) NOT NULL,
+    `category`        varchar(64) NOT NULL,
+    `window_start`    bigint      NOT NULL,
+    `window_end`      bigint      NOT NULL,
+    `record_count`    bigint      NOT NULL,
+    `rate_per_second` double      NOT NULL,
+    PRIMARY KEY (`window_type`, `category`, `window_start`)
 ) ;
\ No newline at end of file
@@ -0,0 +1,88 @@
+package cn.yyzmain.h2.controller;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.entity.StudentPage;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import cn.yyzmain.h2.service.StudentCache;
+import cn.yyzmain.result.MainResult;
+import cn.yyzmain.result.ResultCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StudentControllerTests {
+
+    private final List<Integer> ids = new ArrayList<>(Arrays.asList(3, 5, 8, 13));
+    private final List<Integer> afterIds = new ArrayList<>();
+    private final List<Integer> limits = new ArrayList<>();
+    private StudentController controller;
+
+    @BeforeEach
+    void setUp() {
+        // 只实现游标分页：按 student_id 升序取 afterId 之后的 limit 条
+        final StudentMapper mapper = (StudentMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{StudentMapper.class}, (proxy, method, args) -> {
+                    if (!"selectPage".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    final int afterId = (Integer) args[0];
+                    final int limit = (Integer) args[1];
+                    afterIds.add(afterId);
+                    limits.add(limit);
+                    return ids.stream().filter(id -> id > afterId).limit(limit)
+                            .map(id -> new Student().setStudentId(id)).collect(Collectors.toList());
+                });
+        final StudentCache cache = new StudentCache(mapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        cache.init();
+        controller = new StudentController(mapper, null, null, cache);
+    }
+
+    @Test
+    void firstPageUsesDefaultsAndEndsWhenShort() {
+        final StudentPage page = controller.page(null, null).getData();
+        assertEquals(Integer.MIN_VALUE, afterIds.get(0));
+        assertEquals(100, limits.get(0));
+        assertEquals(4, page.getStudents().size());
+        assertNull(page.getNextAfterId());
+    }
+
+    @Test
+    void walksPagesByNextAfterId() {
+        final StudentPage first = controller.page(null, 2).getData();
+        assertEquals(Arrays.asList(3, 5), studentIds(first));
+        assertEquals(5, first.getNextAfterId());
+
+        // 恰好取满limit条时仍返回nextAfterId，下一页为空才结束
+        final StudentPage second = controller.page(first.getNextAfterId(), 2).getData();
+        assertEquals(Arrays.asList(8, 13), studentIds(second));
+        assertEquals(13, second.getNextAfterId());
+
+        final StudentPage last = controller.page(second.getNextAfterId(), 2).getData();
+        assertEquals(0, last.getStudents().size());
+        assertNull(last.getNextAfterId());
+        assertEquals(Arrays.asList(Integer.MIN_VALUE, 5, 13), afterIds);
+    }
+
+    @Test
+    void rejectsLimitOutOfRange() {
+        final MainResult<StudentPage> zero = controller.page(null, 0);
+        assertEquals(ResultCode.PARAMS_ERROR.getCode(), zero.getCode());
+        assertEquals(ResultCode.PARAMS_ERROR.getCode(), controller.page(null, 1001).getCode());
+        assertEquals(0, afterIds.size());
+    }
+
+    private static List<Integer> studentIds(StudentPage page) {
+        return page.getStudents().stream().map(Student::getStudentId).collect(Collectors.toList());
+    }
+}
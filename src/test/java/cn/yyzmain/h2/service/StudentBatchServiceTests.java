@@ -0,0 +1,163 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.entity.StudentBatchResult;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import tk.mybatis.mapper.mapperhelper.MapperHelper;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StudentBatchServiceTests {
+
+    private final List<List<Integer>> existenceQueries = new ArrayList<>();
+    private final List<Student> inserted = new ArrayList<>();
+
+    @Test
+    void validatesRequiredFieldsNameLengthAndDuplicateIds() {
+        final Set<Integer> seen = new HashSet<>();
+        assertNull(StudentBatchService.validate(student(1, "tom"), seen));
+        assertNotNull(StudentBatchService.validate(student(1, "jerry"), seen));
+        assertNotNull(StudentBatchService.validate(null, seen));
+        assertNotNull(StudentBatchService.validate(student(null, "tom"), seen));
+        assertNotNull(StudentBatchService.validate(student(2, " "), seen));
+        assertNull(StudentBatchService.validate(student(3, StringUtils.repeat('x', 50)), seen));
+        assertNotNull(StudentBatchService.validate(student(4, StringUtils.repeat('x', 51)), seen));
+        assertNotNull(StudentBatchService.validate(student(5, "tom").setAge(null), seen));
+        // 校验失败的行不占用ID
+        assertEquals(new HashSet<>(Arrays.asList(1, 3)), seen);
+    }
+
+    @Test
+    void reportsInvalidAndExistingRowsAndInsertsTheRest() {
+        final StudentBatchService service = service(Collections.singleton(2));
+        final List<Student> students = Arrays.asList(
+                student(1, "tom"),
+                student(2, "exists"),
+                student(3, ""),
+                student(1, "dup"),
+                student(4, "jerry"),
+                student(5, "spike"));
+
+        final StudentBatchResult result = service.addBatch(students);
+
+        assertEquals(Arrays.asList(1, 4, 5), result.getInsertedIds());
+        assertEquals(Arrays.asList(1, 4, 5), inserted.stream().map(Student::getStudentId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 2, 3), result.getErrors().stream().map(StudentBatchResult.RowError::getIndex)
+                .collect(Collectors.toList()));
+        assertEquals(2, result.getErrors().get(0).getStudentId());
+        assertEquals("studentId已存在", result.getErrors().get(0).getError());
+        // 只查询校验通过的ID，按 chunkSize 分块
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(4, 5)), existenceQueries);
+        assertTrue(result.getCostMs() >= 0);
+    }
+
+    @Test
+    void skipsInsertWhenNothingIsWritable() {
+        final StudentBatchResult result = service(Collections.singleton(1)).addBatch(Arrays.asList(student(1, "tom"), null));
+        assertTrue(result.getInsertedIds().isEmpty());
+        assertEquals(2, result.getErrors().size());
+        assertTrue(inserted.isEmpty());
+    }
+
+    @Test
+    void addBatchRunsInOneTransactionAgainstH2() throws Exception {
+        final JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:student_batch;DB_CLOSE_DELAY=-1");
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE student (student_id INT PRIMARY KEY, student_name VARCHAR(50) NOT NULL, "
+                + "gender INT NOT NULL, age INT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO student VALUES (2, 'exists', 1, 18)");
+        final tk.mybatis.mapper.session.Configuration configuration = new tk.mybatis.mapper.session.Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setMapperHelper(new MapperHelper());
+        configuration.addMapper(StudentMapper.class);
+        final SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        final SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        final StudentMapper mapper = new SqlSessionTemplate(sqlSessionFactory).getMapper(StudentMapper.class);
+        final StudentCache cache = new StudentCache(mapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        final StudentBatchService service = new StudentBatchService(sqlSessionFactory, mapper, cache);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        service.init();
+        final TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        try {
+            // 与 @Transactional 相同：已存在ID查询与批量INSERT在同一个事务中
+            final StudentBatchResult result = transaction.execute(status -> service.addBatch(Arrays.asList(
+                    student(1, "tom"), student(2, "dup"), student(3, "jerry"), student(4, "spike"))));
+
+            assertEquals(Arrays.asList(1, 3, 4), result.getInsertedIds());
+            assertEquals(1, result.getErrors().size());
+            assertEquals(Arrays.asList(1, 2, 3, 4),
+                    jdbcTemplate.queryForList("SELECT student_id FROM student ORDER BY student_id", Integer.class));
+            assertEquals("exists", jdbcTemplate.queryForObject("SELECT student_name FROM student WHERE student_id = 2",
+                    String.class));
+        } finally {
+            jdbcTemplate.execute("DROP TABLE student");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private StudentBatchService service(Set<Integer> existing) {
+        // 只实现已存在ID查询
+        final StudentMapper mapper = (StudentMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{StudentMapper.class}, (proxy, method, args) -> {
+                    if (!"selectExistingIds".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    final List<Integer> ids = new ArrayList<>((Collection<Integer>) args[0]);
+                    existenceQueries.add(ids);
+                    return ids.stream().filter(existing::contains).collect(Collectors.toList());
+                });
+        final StudentBatchService service = new StudentBatchService(null, mapper, null) {
+            @Override
+            public int insertBatch(List<Student> students) {
+                inserted.addAll(students);
+                return students.size();
+            }
+        };
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        // 已存在ID查询走批量会话，这里只取mapper
+        final SqlSessionFactory sqlSessionFactory = (SqlSessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{SqlSessionFactory.class}, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        ReflectionTestUtils.setField(service, "batchSqlSession", new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH, null) {
+            @Override
+            public <T> T getMapper(Class<T> type) {
+                return type.cast(mapper);
+            }
+        });
+        return service;
+    }
+
+    private static Student student(Integer id, String name) {
+        return new Student().setStudentId(id).setStudentName(name).setGender(1).setAge(18);
+    }
+}
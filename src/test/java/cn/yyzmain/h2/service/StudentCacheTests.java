@@ -0,0 +1,88 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StudentCacheTests {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private volatile String name = "tom";
+    private StudentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // 只实现按ID查询，查库时短暂阻塞以制造并发未命中
+        final StudentMapper mapper = (StudentMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{StudentMapper.class}, (proxy, method, args) -> {
+                    if (!"selectById".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    loads.incrementAndGet();
+                    TimeUnit.MILLISECONDS.sleep(50);
+                    final int id = (Integer) args[0];
+                    return id < 0 ? null : new Student().setStudentId(id).setStudentName(name);
+                });
+        cache = new StudentCache(mapper, registry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "negativeTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "pageMaxSize", 100L);
+        ReflectionTestUtils.setField(cache, "pageTtlMs", 60_000L);
+        cache.init();
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Student>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return cache.get(1);
+            }));
+        }
+        start.countDown();
+        for (Future<Student> future : futures) {
+            assertEquals("tom", future.get().getStudentName());
+        }
+        pool.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(7, registry.get("cache.gets").tag("cache", "student.byId").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void cachesMissingIdsAndReloadsAfterEvict() {
+        assertNull(cache.get(-1));
+        assertNull(cache.get(-1));
+        assertEquals(1, loads.get());
+
+        cache.get(2);
+        name = "jerry";
+        assertEquals("tom", cache.get(2).getStudentName());
+        cache.evict(Collections.singletonList(2));
+        assertEquals("jerry", cache.get(2).getStudentName());
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,92 @@
+package cn.yyzmain.h2.service;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.mapper.StudentMapper;
+import com.google.gson.Gson;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StudentExportServiceTests {
+
+    @Test
+    void writesRowsAsJsonArray() throws Exception {
+        final ListCursor cursor = new ListCursor(Arrays.asList(
+                new Student().setStudentId(1).setStudentName("tom").setGender(1).setAge(18),
+                new Student().setStudentId(2).setStudentName("\"jerry\"").setAge(20)));
+        final StringWriter out = new StringWriter();
+
+        assertEquals(2, new StudentExportService(mapper(cursor)).export(out));
+
+        final Student[] students = new Gson().fromJson(out.toString(), Student[].class);
+        assertEquals(2, students.length);
+        assertEquals("tom", students[0].getStudentName());
+        assertEquals("\"jerry\"", students[1].getStudentName());
+        assertEquals(20, students[1].getAge());
+        assertTrue(cursor.closed);
+    }
+
+    @Test
+    void writesEmptyArrayForEmptyTable() throws Exception {
+        final ListCursor cursor = new ListCursor(Collections.emptyList());
+        final StringWriter out = new StringWriter();
+
+        assertEquals(0, new StudentExportService(mapper(cursor)).export(out));
+        assertEquals("[]", out.toString());
+        assertTrue(cursor.closed);
+    }
+
+    private static StudentMapper mapper(Cursor<Student> cursor) {
+        return (StudentMapper) Proxy.newProxyInstance(StudentExportServiceTests.class.getClassLoader(),
+                new Class<?>[]{StudentMapper.class}, (proxy, method, args) -> {
+                    if (!"selectAllCursor".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return cursor;
+                });
+    }
+
+    private static final class ListCursor implements Cursor<Student> {
+
+        private final List<Student> rows;
+        private boolean closed;
+
+        ListCursor(List<Student> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return false;
+        }
+
+        @Override
+        public int getCurrentIndex() {
+            return -1;
+        }
+
+        @Override
+        public Iterator<Student> iterator() {
+            return rows.iterator();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
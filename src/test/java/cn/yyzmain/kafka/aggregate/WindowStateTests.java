@@ -0,0 +1,103 @@
+package cn.yyzmain.kafka.aggregate;
+
+import cn.yyzmain.kafka.entity.WindowAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowStateTests {
+
+    private static final long PANE = 1000;
+
+    @Test
+    void closesTumblingAndSlidingWindowsPerPrefix() {
+        final WindowState state = new WindowState(PANE, 2, 0, 16);
+        state.add("a-1", 100);
+        state.add("a-2", 900);
+        state.add("b-1", 500);
+        state.add("nodash", 600);
+        state.add("a-3", 1500);
+        assertEquals(2, state.keyCount());
+
+        // 水位线到2000，窗格[0,1000)和[1000,2000)关闭
+        state.advanceTo(2000);
+        final List<WindowAggregate> closed = state.drainClosed();
+
+        assertEquals(2, count(closed, WindowAggregate.TUMBLING, "a-", 0));
+        assertEquals(1, count(closed, WindowAggregate.TUMBLING, "b-", 0));
+        assertEquals(1, count(closed, WindowAggregate.TUMBLING, WindowState.OTHER, 0));
+        assertEquals(1, count(closed, WindowAggregate.TUMBLING, "a-", 1000));
+        // 滑动窗口[0,2000)包含两个窗格
+        assertEquals(3, count(closed, WindowAggregate.SLIDING, "a-", 0));
+        final WindowAggregate sliding = find(closed, WindowAggregate.SLIDING, "a-", 0);
+        assertEquals(2000, sliding.getWindowEnd());
+        assertEquals(1.5, sliding.getRatePerSecond(), 1e-9);
+    }
+
+    @Test
+    void dropsRecordsOlderThanClosedPanes() {
+        final WindowState state = new WindowState(PANE, 1, 500, 16);
+        assertTrue(state.add("a-1", 100));
+        assertTrue(state.add("a-2", 1600));
+        // 水位线1100，窗格0关闭
+        assertEquals(1, state.drainClosed().size());
+        assertFalse(state.add("a-3", 999));
+        assertTrue(state.add("a-4", 1000));
+        assertEquals(1, state.getLateCount());
+    }
+
+    @Test
+    void skipsEmptyPanesAfterLongGap() {
+        final WindowState state = new WindowState(PANE, 3, 0, 16);
+        state.add("a-1", 0);
+        state.advanceTo(Long.MAX_VALUE / 2);
+        // 窗格0的滚动窗口，以及包含它的3个滑动窗口
+        assertEquals(4, state.drainClosed().size());
+        assertTrue(state.add("a-2", Long.MAX_VALUE / 2 + 10));
+    }
+
+    @Test
+    void restoresOpenPanesFromCheckpoint() {
+        final WindowState state = new WindowState(PANE, 2, 0, 16);
+        state.add("a-1", 100);
+        state.add("a-2", 1100);
+        state.drainClosed();
+
+        final WindowState restored = new WindowState(PANE, 2, 0, 16);
+        assertTrue(restored.restore(state.checkpoint()));
+        restored.add("a-3", 1200);
+        restored.advanceTo(2000);
+        final List<WindowAggregate> closed = restored.drainClosed();
+        assertEquals(2, count(closed, WindowAggregate.TUMBLING, "a-", 1000));
+        assertEquals(3, count(closed, WindowAggregate.SLIDING, "a-", 0));
+
+        assertFalse(new WindowState(PANE * 2, 2, 0, 16).restore(state.checkpoint()));
+    }
+
+    @Test
+    void overflowKeysGoToOther() {
+        final WindowState state = new WindowState(PANE, 1, 0, 2);
+        state.add("a-1", 0);
+        state.add("b-1", 0);
+        state.add("c-1", 0);
+        state.advanceTo(PANE);
+        assertEquals(1, count(state.drainClosed(), WindowAggregate.TUMBLING, WindowState.OTHER, 0));
+    }
+
+    private static long count(List<WindowAggregate> closed, String type, String category, long start) {
+        final WindowAggregate aggregate = find(closed, type, category, start);
+        return aggregate == null ? 0 : aggregate.getRecordCount();
+    }
+
+    private static WindowAggregate find(List<WindowAggregate> closed, String type, String category, long start) {
+        final List<WindowAggregate> matched = closed.stream()
+                .filter(a -> a.getWindowType().equals(type) && a.getCategory().equals(category) && a.getWindowStart() == start)
+                .collect(Collectors.toList());
+        return matched.isEmpty() ? null : matched.get(0);
+    }
+}
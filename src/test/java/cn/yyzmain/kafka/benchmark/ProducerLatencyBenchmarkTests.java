@@ -0,0 +1,226 @@
+package cn.yyzmain.kafka.benchmark;
+
+import cn.yyzmain.kafka.config.MainCustomPartitioner;
+import cn.yyzmain.kafka.config.ProducerProfile;
+import cn.yyzmain.kafka.product.MainProduct;
+import cn.yyzmain.kafka.spill.SpillJournal;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MainProduct 各发送方式的吞吐与确认延迟压测，基于内嵌kafka，默认不执行：
+ * {@code mvn test -Pbenchmark -Dtest=ProducerLatencyBenchmarkTests}
+ * <p>
+ * 按固定速率投递，延迟从计划发送时刻算起（避免协调遗漏），由ProducerListener在broker确认时记录；
+ * 速率、消息大小、消息数可通过 -Dbenchmark.rates=5000,20000 -Dbenchmark.payload-sizes=128,1024
+ * -Dbenchmark.messages=20000 调整
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProducerLatencyBenchmarkTests {
+
+    private static final String TOPIC = "bench-latency";
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 20_000);
+    private static final int BATCH_SIZE = Integer.getInteger("benchmark.batch-size", 500);
+    private static final int[] RATES = ints(System.getProperty("benchmark.rates", "5000,20000"));
+    private static final int[] PAYLOAD_SIZES = ints(System.getProperty("benchmark.payload-sizes", "128,1024"));
+    private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    private static EmbeddedKafkaBroker broker;
+
+    @TempDir
+    File dir;
+
+    private enum Mode {
+        SEND_MESSAGE, SEND_CALLBACK, SEND_ASYNC, SEND_BATCH
+    }
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, false, 3, TOPIC);
+        broker.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void sendModes() throws Exception {
+        // 预热：建立连接、加载元数据、JIT
+        run(Mode.SEND_CALLBACK, 128, RATES[0], MESSAGES / 4);
+
+        final List<String> report = new ArrayList<>();
+        for (int payloadSize : PAYLOAD_SIZES) {
+            for (int rate : RATES) {
+                for (Mode mode : Mode.values()) {
+                    report.add(run(mode, payloadSize, rate, MESSAGES));
+                }
+            }
+        }
+        System.out.printf("%n%-14s %8s %8s %10s %9s %9s %9s %9s %7s%n",
+                "mode", "bytes", "rate", "msg/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "failed");
+        report.forEach(System.out::println);
+    }
+
+    private String run(Mode mode, int payloadSize, int rate, int messages) throws Exception {
+        final long[] intended = new long[messages];
+        final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        final AtomicInteger acked = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final long[] lastAck = new long[1];
+
+        final DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(producerProps());
+        final KafkaTemplate<String, String> template = new KafkaTemplate<>(factory);
+        template.setProducerListener(new ProducerListener<String, String>() {
+            @Override
+            public void onSuccess(ProducerRecord<String, String> record, RecordMetadata metadata) {
+                final long now = System.nanoTime();
+                histogram.recordValue(Math.min(MAX_LATENCY_MICROS, (now - intended[seq(record.value())]) / 1000));
+                lastAck[0] = now;
+                acked.incrementAndGet();
+            }
+
+            @Override
+            public void onError(ProducerRecord<String, String> record, Exception exception) {
+                failed.incrementAndGet();
+            }
+        });
+
+        final File spillDir = new File(dir, mode + "-" + payloadSize + "-" + rate);
+        try (SpillJournal journal = new SpillJournal(spillDir, 1 << 20, 64L << 20)) {
+            journal.open();
+            final MainProduct product = newMainProduct(template, journal);
+            final String[] payloads = payloads(messages, payloadSize);
+            final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            final long start = System.nanoTime();
+            int rejected = 0;
+            if (mode == Mode.SEND_BATCH) {
+                for (int from = 0; from < messages; from += BATCH_SIZE) {
+                    final int to = Math.min(messages, from + BATCH_SIZE);
+                    // 整批按最后一条的计划时刻发出，批内较早的消息计入等待凑批的时间
+                    final long due = start + (to - 1) * intervalNanos;
+                    for (int i = from; i < to; i++) {
+                        intended[i] = start + i * intervalNanos;
+                    }
+                    awaitUntil(due);
+                    product.sendBatch(TOPIC, Arrays.asList(payloads).subList(from, to));
+                }
+            } else {
+                for (int i = 0; i < messages; i++) {
+                    intended[i] = start + i * intervalNanos;
+                    awaitUntil(intended[i]);
+                    if (mode == Mode.SEND_MESSAGE) {
+                        product.sendMessage(TOPIC, payloads[i]);
+                    } else if (mode == Mode.SEND_CALLBACK) {
+                        product.sendMessageCallback(TOPIC, payloads[i]);
+                    } else if (product.sendMessageAsync(TOPIC, payloads[i]).isCompletedExceptionally()) {
+                        rejected++;
+                    }
+                }
+            }
+            template.flush();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (acked.get() + failed.get() + rejected < messages && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            final double seconds = Math.max(1, lastAck[0] - start) / 1e9;
+            return String.format("%-14s %8d %8d %10.0f %9.2f %9.2f %9.2f %9.2f %7d", mode, payloadSize, rate,
+                    acked.get() / seconds, millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0, messages - acked.get());
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static MainProduct newMainProduct(KafkaTemplate<String, String> template, SpillJournal journal) {
+        final MainProduct product = new MainProduct(template, null, journal);
+        ReflectionTestUtils.setField(product, "batchTimeoutMs", 30_000L);
+        ReflectionTestUtils.setField(product, "maxFailureDetails", 100);
+        ReflectionTestUtils.setField(product, "maxInFlight", 10_000);
+        product.init();
+        return product;
+    }
+
+    private static Map<String, Object> producerProps() {
+        final Map<String, Object> base = new HashMap<>();
+        base.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        base.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        base.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        base.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, MainCustomPartitioner.class);
+        base.put(ProducerConfig.ACKS_CONFIG, "all");
+        return ProducerProfile.apply(base, Integer.getInteger("benchmark.linger-ms", 5),
+                Integer.getInteger("benchmark.producer-batch-size", 65536),
+                System.getProperty("benchmark.compression", "lz4"));
+    }
+
+    private static void awaitUntil(long nanoTime) {
+        long remaining;
+        // 剩余时间较长时park，临近计划时刻自旋
+        while ((remaining = nanoTime - System.nanoTime()) > 100_000) {
+            LockSupport.parkNanos(remaining - 50_000);
+        }
+        while (System.nanoTime() < nanoTime) {
+            // spin
+        }
+    }
+
+    /**
+     * 消息开头10位为序号，后续填充到指定大小
+     */
+    private static String[] payloads(int count, int size) {
+        final String[] payloads = new String[count];
+        final char[] chars = new char[Math.max(size, 11)];
+        Arrays.fill(chars, 'x');
+        chars[10] = '-';
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            for (int j = 9; j >= 0; j--) {
+                chars[j] = (char) ('0' + n % 10);
+                n /= 10;
+            }
+            payloads[i] = new String(chars);
+        }
+        return payloads;
+    }
+
+    private static int seq(String value) {
+        int seq = 0;
+        for (int i = 0; i < 10; i++) {
+            seq = seq * 10 + (value.charAt(i) - '0');
+        }
+        return seq;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
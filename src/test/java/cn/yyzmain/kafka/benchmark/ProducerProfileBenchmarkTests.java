@@ -0,0 +1,98 @@
+package cn.yyzmain.kafka.benchmark;
+
+import cn.yyzmain.kafka.config.MainCustomPartitioner;
+import cn.yyzmain.kafka.config.ProducerProfile;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * producer档位对比压测，基于内嵌kafka，默认不执行：
+ * {@code mvn test -Pbenchmark -Dtest=ProducerProfileBenchmarkTests}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProducerProfileBenchmarkTests {
+
+    private static final String TOPIC = "bench-profile";
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 200_000);
+    private static final int PAYLOAD_BYTES = Integer.getInteger("benchmark.payload-bytes", 256);
+
+    private static EmbeddedKafkaBroker broker;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, false, 3, TOPIC);
+        broker.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void compareProfiles() throws Exception {
+        final List<String> report = new ArrayList<>();
+        report.add(run("latency/none", 0, 16384, "none"));
+        report.add(run("throughput/lz4", 20, 262144, "lz4"));
+        report.add(run("throughput/zstd", 20, 262144, "zstd"));
+        System.out.printf("%n%-18s %12s %12s%n", "profile", "msg/s", "MB/s");
+        report.forEach(System.out::println);
+    }
+
+    private String run(String name, int lingerMs, int batchSize, String compression) throws Exception {
+        final Map<String, Object> base = new HashMap<>();
+        base.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        base.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        base.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        base.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, MainCustomPartitioner.class);
+        final DefaultKafkaProducerFactory<String, String> factory =
+                new DefaultKafkaProducerFactory<>(ProducerProfile.apply(base, lingerMs, batchSize, compression));
+        final KafkaTemplate<String, String> template = new KafkaTemplate<>(factory);
+        try {
+            final String payload = payload();
+            // 预热
+            sendAll(template, payload, MESSAGES / 10);
+            final long start = System.nanoTime();
+            sendAll(template, payload, MESSAGES);
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            return String.format("%-18s %12.0f %12.2f", name, MESSAGES / seconds,
+                    (double) MESSAGES * PAYLOAD_BYTES / seconds / 1024 / 1024);
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static void sendAll(KafkaTemplate<String, String> template, String payload, int count) throws Exception {
+        final List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(template.send(TOPIC, payload));
+        }
+        template.flush();
+        for (ListenableFuture<SendResult<String, String>> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private static String payload() {
+        final StringBuilder builder = new StringBuilder(PAYLOAD_BYTES);
+        while (builder.length() < PAYLOAD_BYTES) {
+            builder.append("x-order-").append(builder.length()).append(",status=PAID;");
+        }
+        return builder.substring(0, PAYLOAD_BYTES);
+    }
+}
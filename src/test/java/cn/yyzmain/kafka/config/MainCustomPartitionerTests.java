@@ -0,0 +1,85 @@
+package cn.yyzmain.kafka.config;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MainCustomPartitionerTests {
+
+    private static final String TOPIC = "yyzmain";
+
+    @Test
+    void routesByPrefix() {
+        final MainCustomPartitioner partitioner = new MainCustomPartitioner();
+        partitioner.configure(Collections.singletonMap(MainCustomPartitioner.ROUTES_CONFIG, "a-:0,b-:1,c-:2,a-x:3"));
+        final Cluster cluster = cluster(4);
+        assertEquals(0, partition(partitioner, cluster, null, "a-hello"));
+        assertEquals(1, partition(partitioner, cluster, null, "b-hello"));
+        assertEquals(2, partition(partitioner, cluster, null, "c-hello"));
+        assertEquals(3, partition(partitioner, cluster, null, "a-xhello"));
+    }
+
+    @Test
+    void routeBeyondPartitionCountFallsBackToHash() {
+        final MainCustomPartitioner partitioner = new MainCustomPartitioner();
+        partitioner.configure(Collections.emptyMap());
+        final Cluster cluster = cluster(2);
+        final int partition = partition(partitioner, cluster, null, "c-hello");
+        assertTrue(partition >= 0 && partition < 2);
+    }
+
+    @Test
+    void unprefixedRecordsHashByKey() {
+        final MainCustomPartitioner partitioner = new MainCustomPartitioner();
+        partitioner.configure(Collections.emptyMap());
+        final Cluster cluster = cluster(3);
+        final int first = partition(partitioner, cluster, "user-1", "x-1");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(first, partition(partitioner, cluster, "user-1", "x-" + i));
+        }
+    }
+
+    @Test
+    void dynamicRoutesOverrideConfiguredRoutes() {
+        final MainCustomPartitioner partitioner = new MainCustomPartitioner();
+        partitioner.configure(Collections.emptyMap());
+        final Cluster cluster = cluster(4);
+        try {
+            PartitionRouteRegistry.publish(PartitionRouteTable.parse("a-:3"));
+            assertEquals(3, partition(partitioner, cluster, null, "a-hello"));
+        } finally {
+            PartitionRouteRegistry.clear();
+        }
+        assertEquals(0, partition(partitioner, cluster, null, "a-hello"));
+    }
+
+    @Test
+    void invalidRoutesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PartitionRouteTable.parse("a-:x"));
+        assertThrows(IllegalArgumentException.class, () -> PartitionRouteTable.parse("a-"));
+    }
+
+    private static int partition(MainCustomPartitioner partitioner, Cluster cluster, String key, String value) {
+        final byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        return partitioner.partition(TOPIC, key, keyBytes, value, value.getBytes(StandardCharsets.UTF_8), cluster);
+    }
+
+    private static Cluster cluster(int partitions) {
+        final Node node = new Node(0, "localhost", 9092);
+        final List<PartitionInfo> infos = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            infos.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("test", Collections.singletonList(node), infos, Collections.emptySet(), Collections.emptySet());
+    }
+}
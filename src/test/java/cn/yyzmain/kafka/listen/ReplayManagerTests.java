@@ -0,0 +1,142 @@
+package cn.yyzmain.kafka.listen;
+
+import cn.yyzmain.kafka.entity.ReplayProgress;
+import cn.yyzmain.kafka.process.FlowController;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayManagerTests {
+
+    private static final String TOPIC = "yyzmain";
+    private static final TopicPartition P0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition P1 = new TopicPartition(TOPIC, 1);
+
+    private ReplayManager replayManager;
+    private MockConsumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp() {
+        replayManager = new ReplayManager(new ListenerConcurrencyManager(null, null) {
+            @Override
+            int partitionCount() {
+                return 2;
+            }
+        });
+        ReflectionTestUtils.setField(replayManager, "topic", TOPIC);
+        ReflectionTestUtils.setField(replayManager, "defaultRate", 1000L);
+
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestamps) {
+                final Map<TopicPartition, OffsetAndTimestamp> offsets = new HashMap<>();
+                timestamps.forEach((tp, timestamp) -> offsets.put(tp, new OffsetAndTimestamp(3, timestamp)));
+                return offsets;
+            }
+        };
+        consumer.assign(Arrays.asList(P0, P1));
+        final Map<TopicPartition, Long> offsets = new HashMap<>();
+        offsets.put(P0, 0L);
+        offsets.put(P1, 0L);
+        consumer.updateBeginningOffsets(offsets);
+        final Map<TopicPartition, Long> ends = new HashMap<>();
+        ends.put(P0, 10L);
+        ends.put(P1, 20L);
+        consumer.updateEndOffsets(ends);
+        consumer.seek(P0, 10);
+        consumer.seek(P1, 20);
+    }
+
+    @Test
+    void seeksToTimestampAndThrottlesReplayedRecords() {
+        replayManager.start(1000L, Collections.singletonList(0), 2L);
+        replayManager.beforeBatch(consumer);
+        assertEquals(3, consumer.position(P0));
+        assertEquals(20, consumer.position(P1));
+
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int offset = 3; offset < 7; offset++) {
+            records.add(new ConsumerRecord<>(TOPIC, 0, offset, null, "a-" + offset));
+        }
+        records.add(new ConsumerRecord<>(TOPIC, 1, 20, null, "b-20"));
+        final List<ConsumerRecord<String, String>> admitted = replayManager.admit(consumer, records);
+
+        // 令牌只有2个：分区0只处理3、4，从5回退并暂停；分区1不受影响
+        assertEquals(Arrays.asList(records.get(0), records.get(1), records.get(4)), admitted);
+        assertEquals(5, consumer.position(P0));
+        assertEquals(Collections.singleton(P0), consumer.paused());
+        assertTrue(replayManager.isReplayed(records.get(2)));
+        assertFalse(replayManager.isReplayed(records.get(4)));
+
+        final ReplayProgress progress = replayManager.progress();
+        assertEquals(2, progress.getReplayed());
+        assertEquals(7, progress.getTarget());
+        assertFalse(progress.isFinished());
+        assertTrue(progress.getPartitions().get(0).isPaused());
+
+        // 取消后恢复暂停的分区
+        replayManager.cancel();
+        replayManager.beforeBatch(consumer);
+        assertTrue(consumer.paused().isEmpty());
+        assertFalse(replayManager.isActive());
+    }
+
+    @Test
+    void dropsPolledRecordsOfSoughtPartitionSoLaterRewindsKeepReplayStart() {
+        final FlowController flowController = new FlowController(new OffsetTracker(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(flowController, "maxPollRecords", 2);
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int offset = 10; offset < 13; offset++) {
+            records.add(new ConsumerRecord<>(TOPIC, 0, offset, null, "a-" + offset));
+        }
+        for (int offset = 20; offset < 23; offset++) {
+            records.add(new ConsumerRecord<>(TOPIC, 1, offset, null, "b-" + offset));
+        }
+
+        // 与MainListen相同的顺序：定位重放，流控截取，限速截取
+        replayManager.start(1000L, Collections.singletonList(0), 100L);
+        final List<ConsumerRecord<String, String>> polled = replayManager.beforeBatch(consumer, records);
+        final List<ConsumerRecord<String, String>> admitted = replayManager.admit(consumer, flowController.admit(consumer, polled));
+
+        // 分区0已拉取的实时消息被丢弃，流控只回退分区1，分区0停在重放起点
+        assertEquals(records.subList(3, 6), polled);
+        assertEquals(records.subList(3, 5), admitted);
+        assertEquals(3, consumer.position(P0));
+        assertEquals(22, consumer.position(P1));
+        assertFalse(replayManager.progress().isFinished());
+    }
+
+    @Test
+    void returnsRecordsUntouchedWithoutReplay() {
+        final List<ConsumerRecord<String, String>> records =
+                Collections.singletonList(new ConsumerRecord<>(TOPIC, 0, 1, null, "a-1"));
+        assertSame(records, replayManager.admit(consumer, records));
+        assertTrue(replayManager.progress().isFinished());
+    }
+
+    @Test
+    void rejectsUnknownPartition() {
+        assertThrows(IllegalArgumentException.class, () -> replayManager.start(0L, Collections.singletonList(5), null));
+        assertThrows(IllegalArgumentException.class, () -> replayManager.start(0L, null, 0L));
+    }
+}
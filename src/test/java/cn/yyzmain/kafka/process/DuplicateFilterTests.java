@@ -0,0 +1,76 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFilterTests {
+
+    private SimpleMeterRegistry registry;
+    private DuplicateFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        filter = new DuplicateFilter(registry);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "expectedInsertions", 10_000L);
+        ReflectionTestUtils.setField(filter, "fpp", 0.01);
+        ReflectionTestUtils.setField(filter, "windowMs", 600_000L);
+        ReflectionTestUtils.setField(filter, "maxMemoryBytes", 1L << 20);
+        filter.init();
+    }
+
+    @Test
+    void dropsProcessedRecordsButNotUncompletedOnes() {
+        final ConsumerRecord<String, String> a = record(0, "k1", "a-1");
+        final ConsumerRecord<String, String> b = record(1, "k1", "a-2");
+        final ConsumerRecord<String, String> c = record(2, null, "a-1");
+        final List<ConsumerRecord<String, String>> batch = Arrays.asList(a, b, c);
+        assertSame(batch, filter.filter(batch));
+        filter.markProcessed(a);
+        filter.markProcessed(c);
+
+        // 重新投递：a、c已处理，b未完成需要重新处理
+        final List<ConsumerRecord<String, String>> redelivered = Arrays.asList(record(0, "k1", "a-1"),
+                record(1, "k1", "a-2"), record(2, null, "a-1"));
+        final List<ConsumerRecord<String, String>> fresh = filter.filter(redelivered);
+        assertEquals(1, fresh.size());
+        assertEquals("a-2", fresh.get(0).value());
+        assertEquals(2.0, registry.get("kafka.dedup.duplicates").counter().count());
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        final List<ConsumerRecord<String, String>> inserted = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            inserted.add(record(i, "key-" + i, "value-" + i));
+        }
+        inserted.forEach(filter::markProcessed);
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.filter(Collections.singletonList(record(i, "other-" + i, "value-" + i))).isEmpty()) {
+                falsePositives++;
+            }
+        }
+        // 目标1%，两代过滤器中只有一代有数据
+        assertTrue(falsePositives < 250, "false positives: " + falsePositives);
+        assertTrue(filter.estimatedFpp() < 0.02);
+        assertTrue(registry.get("kafka.dedup.memory.bytes").gauge().value() <= 1 << 20);
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, String key, String value) {
+        return new ConsumerRecord<>("t", 0, offset, key, value);
+    }
+}
@@ -0,0 +1,87 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowControllerTests {
+
+    private static final TopicPartition P0 = new TopicPartition("t", 0);
+    private static final TopicPartition P1 = new TopicPartition("t", 1);
+
+    private OffsetTracker tracker;
+    private FlowController controller;
+    private MockConsumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new OffsetTracker(new SimpleMeterRegistry());
+        controller = new FlowController(tracker);
+        ReflectionTestUtils.setField(controller, "highWater", 4);
+        ReflectionTestUtils.setField(controller, "lowWater", 1);
+        ReflectionTestUtils.setField(controller, "pollBudgetRatio", 0.5);
+        ReflectionTestUtils.setField(controller, "minBatch", 2);
+        ReflectionTestUtils.setField(controller, "maxPollRecords", 500);
+        ReflectionTestUtils.setField(controller, "maxPollIntervalMs", 1000L);
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Arrays.asList(P0, P1));
+    }
+
+    @Test
+    void shrinksBatchToPollBudgetAndRewindsTheRest() {
+        final List<ConsumerRecord<String, String>> records = records();
+        assertSame(records, controller.admit(consumer, records));
+
+        // 每条100ms，预算500ms => 5条
+        controller.afterBatch(consumer, 1, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(5, controller.effectiveBatchSize());
+        final List<ConsumerRecord<String, String>> admitted = controller.admit(consumer, records);
+        assertEquals(5, admitted.size());
+        assertEquals(5, consumer.position(P0));
+        assertEquals(0, consumer.position(P1));
+    }
+
+    @Test
+    void pausesAboveHighWaterAndResumesBelowLowWater() {
+        final List<ConsumerRecord<String, String>> records = records();
+        tracker.register(records);
+        controller.afterBatch(consumer, 0, 0);
+        assertEquals(consumer.assignment(), consumer.paused());
+
+        records.subList(0, 11).forEach(tracker::complete);
+        controller.checkBackpressure(consumer);
+        assertEquals(consumer.assignment(), consumer.paused());
+
+        tracker.complete(records.get(11));
+        controller.checkBackpressure(consumer);
+        assertTrue(consumer.paused().isEmpty());
+    }
+
+    /**
+     * P0 offset 0-9，P1 offset 0-2
+     */
+    private static List<ConsumerRecord<String, String>> records() {
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(new ConsumerRecord<>("t", 0, i, null, "v"));
+        }
+        for (int i = 0; i < 3; i++) {
+            records.add(new ConsumerRecord<>("t", 1, i, null, "v"));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,156 @@
+package cn.yyzmain.kafka.process;
+
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaneSchedulerTests {
+
+    private static final TopicPartition P0 = new TopicPartition("t", 0);
+    private static final TopicPartition P2 = new TopicPartition("t", 2);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final List<FailedRecord> retried = new CopyOnWriteArrayList<>();
+
+    private OffsetTracker tracker;
+    private LaneScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new OffsetTracker(new SimpleMeterRegistry());
+        final RetryPublisher publisher = new RetryPublisher(null, null, tracker) {
+            @Override
+            public List<ConsumerRecord<String, String>> publish(List<FailedRecord> failures) {
+                retried.addAll(failures);
+                return Collections.emptyList();
+            }
+        };
+        scheduler = new LaneScheduler(tracker, publisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "prefixWeights", "a-:3,c-:1");
+        ReflectionTestUtils.setField(scheduler, "partitionWeights", "");
+        ReflectionTestUtils.setField(scheduler, "defaultWeight", 1);
+        ReflectionTestUtils.setField(scheduler, "threads", 3);
+        ReflectionTestUtils.setField(scheduler, "highWater", 100);
+        ReflectionTestUtils.setField(scheduler, "lowWater", 20);
+        scheduler.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        scheduler.destroy();
+    }
+
+    @Test
+    void highLaneIsNotHeldByBlockedLowLane() throws Exception {
+        final CountDownLatch highDone = new CountDownLatch(4);
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            records.add(new ConsumerRecord<>("t", 2, i, null, "c-" + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            records.add(new ConsumerRecord<>("t", 0, i, null, "a-" + i));
+        }
+        // c-通道只有1个线程且被卡住，dispatch仍立即返回，a-通道照常处理完
+        scheduler.dispatch(records, record -> {
+            if (record.value().startsWith("c-")) {
+                release.await();
+            } else {
+                highDone.countDown();
+            }
+            handled.add(record.value());
+        });
+        assertTrue(highDone.await(5, TimeUnit.SECONDS));
+        assertEquals(4, scheduler.pendingAbove(0));
+    }
+
+    @Test
+    void keepsOrderOfSameKeyAcrossLanes() throws Exception {
+        final CountDownLatch k2Done = new CountDownLatch(1);
+        final CountDownLatch allDone = new CountDownLatch(3);
+        scheduler.dispatch(Arrays.asList(
+                new ConsumerRecord<>("t", 0, 0, "k1", "c-0"),
+                new ConsumerRecord<>("t", 0, 1, "k2", "a-0"),
+                new ConsumerRecord<>("t", 0, 2, "k1", "a-1")), record -> {
+            if ("c-0".equals(record.value())) {
+                release.await();
+            }
+            handled.add(record.value());
+            if ("k2".equals(record.key())) {
+                k2Done.countDown();
+            }
+            allDone.countDown();
+        });
+        // k1的a-1跟随仍在处理中的c-0进入c-通道，其他a-消息不受影响
+        assertTrue(k2Done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("a-0"), handled);
+        release.countDown();
+        assertTrue(allDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a-0", "c-0", "a-1"), handled);
+    }
+
+    @Test
+    void failedRecordsArePublishedToRetry() throws Exception {
+        final ConsumerRecord<String, String> record = new ConsumerRecord<>("t", 0, 0, null, "a-0");
+        scheduler.dispatch(Collections.singletonList(record), r -> {
+            throw new IllegalStateException("boom");
+        });
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (retried.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, retried.size());
+        assertEquals("boom", retried.get(0).getException().getMessage());
+    }
+
+    @Test
+    void pausesLowWeightPartitionsOnHighLaneBacklog() throws Exception {
+        final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Arrays.asList(P0, P2));
+        final List<ConsumerRecord<String, String>> own = new ArrayList<>();
+        own.add(new ConsumerRecord<>("t", 0, 0, null, "a-0"));
+        for (int i = 0; i < 10; i++) {
+            own.add(new ConsumerRecord<>("t", 2, i, null, "c-" + i));
+        }
+        scheduler.dispatch(own, record -> handled.add(record.value()));
+
+        // a-积压来自另一个消费者的分区，同样计入
+        final List<ConsumerRecord<String, String>> high = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            high.add(new ConsumerRecord<>("t", 5, i, null, "a-" + i));
+        }
+        scheduler.dispatch(high, record -> release.await());
+
+        // c-分区阈值 20+80*1/3=46，a-为最高权重不由通道暂停
+        scheduler.checkBackpressure(consumer);
+        assertEquals(Collections.singleton(P2), consumer.paused());
+
+        release.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.pendingAbove(1) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        scheduler.checkBackpressure(consumer);
+        assertTrue(consumer.paused().isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OffsetTrackerTests {
+
+    private static final TopicPartition TP = new TopicPartition("t", 0);
+
+    private OffsetTracker tracker;
+
+    private SimpleMeterRegistry registry;
+
+    private MockConsumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        tracker = new OffsetTracker(registry);
+        ReflectionTestUtils.setField(tracker, "commitIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(tracker, "commitCount", 3);
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Collections.singletonList(TP));
+    }
+
+    @Test
+    void commitsHighestContiguousOffset() {
+        final List<ConsumerRecord<String, String>> records = records(10, 11, 12, 13, 14);
+        tracker.register(records);
+        tracker.complete(records.get(1));
+        tracker.complete(records.get(2));
+        tracker.complete(records.get(3));
+        tracker.commitIfDue(consumer);
+        // 10未完成，不能提交
+        assertNull(committed());
+
+        tracker.complete(records.get(0));
+        tracker.commitIfDue(consumer);
+        assertEquals(14, committed().offset());
+        assertEquals(1, tracker.pendingCount(TP));
+
+        tracker.complete(records.get(4));
+        tracker.commitIfDue(consumer);
+        // 未达到数量阈值和时间间隔
+        assertEquals(14, committed().offset());
+        tracker.onIdle(new ListenerContainerIdleEvent(this, this, 0, "id",
+                Collections.singletonList(TP), consumer, false));
+        assertEquals(15, committed().offset());
+        assertEquals(2, registry.get("kafka.consumer.commit").tag("result", "success").timer().count());
+        assertEquals(0.0, registry.get("kafka.listener.pending").gauge().value());
+    }
+
+    @Test
+    void gapsBetweenRegisteredOffsetsCountAsCompleted() {
+        final List<ConsumerRecord<String, String>> records = records(0, 5, 9);
+        tracker.register(records);
+        records.forEach(tracker::complete);
+        tracker.commitIfDue(consumer);
+        assertEquals(10, committed().offset());
+    }
+
+    @Test
+    void rewindAndRedeliveryRestartTracking() {
+        final List<ConsumerRecord<String, String>> records = records(0, 1, 2, 3);
+        tracker.register(records);
+        tracker.complete(records.get(0));
+        tracker.complete(records.get(2));
+        tracker.complete(records.get(3));
+        tracker.rewind(consumer, Collections.singletonList(records.get(1)));
+        assertEquals(1, consumer.position(TP));
+
+        final List<ConsumerRecord<String, String>> redelivered = records(1, 2, 3);
+        tracker.register(redelivered);
+        assertEquals(3, tracker.pendingCount(TP));
+        redelivered.forEach(tracker::complete);
+        tracker.commitIfDue(consumer);
+        assertEquals(4, committed().offset());
+    }
+
+    @Test
+    void skippedRecordsAdvancePastFilteredTail() {
+        final List<ConsumerRecord<String, String>> processed = records(0, 2);
+        tracker.register(processed);
+        processed.forEach(tracker::complete);
+        // 1在已登记区间内按空洞处理，3、4在末尾
+        consumer.seek(TP, 5);
+        tracker.skip(consumer, records(1, 3, 4));
+        forceCommit();
+        assertEquals(5, committed().offset());
+
+        // 整批都被过滤
+        consumer.seek(TP, 8);
+        tracker.skip(consumer, records(5, 6, 7));
+        forceCommit();
+        assertEquals(8, committed().offset());
+    }
+
+    @Test
+    void skipKeepsRecordsAfterRewoundPosition() {
+        final List<ConsumerRecord<String, String>> processed = records(0, 1);
+        tracker.register(processed);
+        tracker.complete(processed.get(0));
+        // 1被回退，之后被过滤的2、3会重新拉取，不能越过
+        consumer.seek(TP, 1);
+        tracker.skip(consumer, records(2, 3));
+        forceCommit();
+        assertEquals(1, committed().offset());
+    }
+
+    @Test
+    void completionListenerOnlySeesItsTopic() {
+        final List<ConsumerRecord<?, ?>> completed = new ArrayList<>();
+        tracker.addCompletionListener("t", completed::add);
+        final ConsumerRecord<String, String> main = new ConsumerRecord<>("t", 0, 0, null, "v");
+        final ConsumerRecord<String, String> retry = new ConsumerRecord<>("t.retry", 0, 0, null, "v");
+        tracker.register(Arrays.asList(main, retry));
+        tracker.complete(main);
+        tracker.complete(retry);
+        assertEquals(Collections.singletonList(main), completed);
+    }
+
+    private void forceCommit() {
+        tracker.onIdle(new ListenerContainerIdleEvent(this, this, 0, "id",
+                Collections.singletonList(TP), consumer, false));
+    }
+
+    private OffsetAndMetadata committed() {
+        return consumer.committed(Collections.singleton(TP)).get(TP);
+    }
+
+    private static List<ConsumerRecord<String, String>> records(long... offsets) {
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        Arrays.stream(offsets).forEach(offset -> records.add(new ConsumerRecord<>(TP.topic(), TP.partition(), offset, null, "v")));
+        return records;
+    }
+}
@@ -0,0 +1,74 @@
+package cn.yyzmain.kafka.process;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RawRecordFilterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void decodesOnlyRecordsPassingPrefixAndHeaderFilters() {
+        final RawRecordFilter filter = filter("a-,b-", "b-x", "x-type", "order");
+        final List<ConsumerRecord<byte[], byte[]>> filtered = new ArrayList<>();
+        final List<ConsumerRecord<String, String>> decoded = filter.decode(Arrays.asList(
+                record(0, "a-1", "order"),
+                record(1, "b-xyz", "order"),
+                record(2, "c-1", "order"),
+                record(3, "b-2", "refund"),
+                record(4, "a-3", null)), filtered);
+
+        assertEquals(1, decoded.size());
+        final ConsumerRecord<String, String> record = decoded.get(0);
+        assertEquals("a-1", record.value());
+        assertEquals("k0", record.key());
+        assertEquals(0, record.offset());
+        assertEquals(1000, record.timestamp());
+        assertEquals("order", new String(record.headers().lastHeader("x-type").value(), StandardCharsets.UTF_8));
+        assertEquals(2, registry.get("kafka.listener.filtered").tag("reason", "prefix").counter().count());
+        assertEquals(2, registry.get("kafka.listener.filtered").tag("reason", "header").counter().count());
+        assertEquals(4, filtered.size());
+        assertEquals(1, filtered.get(0).offset());
+    }
+
+    @Test
+    void passesEverythingWithoutFilters() {
+        final RawRecordFilter filter = filter("", "", "", "");
+        final ConsumerRecord<byte[], byte[]> nullValue = new ConsumerRecord<>("t", 0, 9, null, null);
+        final List<ConsumerRecord<String, String>> decoded = filter.decode(Arrays.asList(record(0, "z", null), nullValue));
+        assertEquals(2, decoded.size());
+        assertNull(decoded.get(1).value());
+        assertNull(decoded.get(1).key());
+    }
+
+    private RawRecordFilter filter(String includes, String excludes, String header, String headerValues) {
+        final RawRecordFilter filter = new RawRecordFilter(registry);
+        ReflectionTestUtils.setField(filter, "includePrefixes", includes);
+        ReflectionTestUtils.setField(filter, "excludePrefixes", excludes);
+        ReflectionTestUtils.setField(filter, "headerName", header);
+        ReflectionTestUtils.setField(filter, "headerValues", headerValues);
+        filter.init();
+        return filter;
+    }
+
+    private static ConsumerRecord<byte[], byte[]> record(long offset, String value, String type) {
+        final ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("t", 0, offset, 1000, TimestampType.CREATE_TIME, 0L, 2,
+                value.length(), ("k" + offset).getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+        if (type != null) {
+            record.headers().add(new RecordHeader("x-type", type.getBytes(StandardCharsets.UTF_8)));
+        }
+        return record;
+    }
+}
@@ -0,0 +1,94 @@
+package cn.yyzmain.kafka.process;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedBatchProcessorTests {
+
+    private ShardedBatchProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        processor = new ShardedBatchProcessor();
+        ReflectionTestUtils.setField(processor, "shardCount", 4);
+        processor.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        processor.destroy();
+    }
+
+    @Test
+    void keepsPerKeyOrderAndWaitsForAllShards() throws Exception {
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(new ConsumerRecord<>("t", 0, i, "k" + (i % 10), String.valueOf(i)));
+        }
+        final Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger handled = new AtomicInteger();
+        final List<FailedRecord> failed = processor.process(records, record -> {
+            seen.computeIfAbsent(record.key(), k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(record.value()));
+            threads.add(Thread.currentThread().getName());
+            handled.incrementAndGet();
+        });
+
+        assertTrue(failed.isEmpty());
+        assertEquals(1000, handled.get());
+        assertTrue(threads.size() > 1);
+        seen.forEach((key, values) -> {
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i));
+            }
+        });
+    }
+
+    @Test
+    void nullKeyRecordsAreSpreadAcrossShards() throws Exception {
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(new ConsumerRecord<>("t", 0, i, null, "a-" + i));
+        }
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger handled = new AtomicInteger();
+        processor.process(records, record -> {
+            threads.add(Thread.currentThread().getName());
+            handled.incrementAndGet();
+        });
+
+        assertEquals(100, handled.get());
+        assertEquals(4, threads.size());
+    }
+
+    @Test
+    void failuresAreReturned() throws Exception {
+        final ConsumerRecord<String, String> a1 = new ConsumerRecord<>("t", 0, 0, "a", "a-1");
+        final ConsumerRecord<String, String> a2 = new ConsumerRecord<>("t", 0, 1, "a", "a-2");
+        assertEquals(processor.shardOf(a1), processor.shardOf(a2));
+
+        final List<FailedRecord> failed = processor.process(Arrays.asList(a1, a2), record -> {
+            if (record.offset() == 1) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        assertEquals(1, failed.size());
+        assertEquals(1, failed.get(0).getRecord().offset());
+        assertEquals("boom", failed.get(0).getException().getMessage());
+    }
+}
@@ -0,0 +1,74 @@
+package cn.yyzmain.kafka.product;
+
+import cn.yyzmain.kafka.config.ProducerProfile;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveProducerFactoryTests {
+
+    @Test
+    void sendsWaitUntilOldProducerIsFlushed() throws Exception {
+        final CountDownLatch flushing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final MockProducer<String, String> throughput = new MockProducer<String, String>(false,
+                new StringSerializer(), new StringSerializer()) {
+            @Override
+            public void flush() {
+                flushing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.flush();
+            }
+        };
+        final MockProducer<String, String> latency = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+        final Map<ProducerProfile, ProducerFactory<String, String>> delegates = new EnumMap<>(ProducerProfile.class);
+        delegates.put(ProducerProfile.THROUGHPUT, () -> throughput);
+        delegates.put(ProducerProfile.LATENCY, () -> latency);
+        final AdaptiveProducerFactory<String, String> factory = new AdaptiveProducerFactory<>(delegates, ProducerProfile.THROUGHPUT);
+        final KafkaTemplate<String, String> template = new KafkaTemplate<>(factory);
+
+        template.send("t", "k", "a-0");
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> switching = pool.submit(() -> factory.switchTo(ProducerProfile.LATENCY));
+            assertTrue(flushing.await(5, TimeUnit.SECONDS));
+            final Future<?> sending = pool.submit(() -> template.send("t", "k", "a-1"));
+
+            // 旧producer flush完成前，新消息不会发出
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertFalse(sending.isDone());
+            assertTrue(latency.history().isEmpty());
+
+            release.countDown();
+            switching.get(5, TimeUnit.SECONDS);
+            sending.get(5, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(throughput.flushed());
+        assertEquals("a-0", throughput.history().get(0).value());
+        assertEquals(1, throughput.history().size());
+        final ProducerRecord<String, String> next = latency.history().get(0);
+        assertEquals("a-1", next.value());
+        assertEquals(ProducerProfile.LATENCY, factory.getActive());
+    }
+}
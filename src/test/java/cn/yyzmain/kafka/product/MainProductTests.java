@@ -0,0 +1,63 @@
+package cn.yyzmain.kafka.product;
+
+import cn.yyzmain.kafka.entity.BatchSendResult;
+import cn.yyzmain.kafka.spill.SpillJournal;
+import cn.yyzmain.kafka.spill.SpillRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MainProductTests {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void spilledAndUnconfirmedRowsAreNotReportedAsFailures() throws Exception {
+        // flush时第一条确认、第二条失败，第三条一直不确认
+        final MockProducer<String, String> producer = new MockProducer<String, String>(false,
+                new StringSerializer(), new StringSerializer()) {
+            @Override
+            public synchronized void flush() {
+                completeNext();
+                errorNext(new IllegalStateException("broker down"));
+            }
+        };
+        try (SpillJournal journal = new SpillJournal(dir, 1 << 16, 1 << 20)) {
+            journal.open();
+            final MainProduct product = new MainProduct(new KafkaTemplate<>(() -> producer), null, journal);
+            ReflectionTestUtils.setField(product, "batchTimeoutMs", 200L);
+            ReflectionTestUtils.setField(product, "maxFailureDetails", 100);
+            ReflectionTestUtils.setField(product, "maxInFlight", 100);
+            product.init();
+
+            final BatchSendResult result = product.sendBatch("t", Arrays.asList("a-0", "a-1", "a-2"));
+
+            assertEquals(1, result.getSuccess());
+            assertEquals(1, result.getSpilled());
+            assertEquals(1, result.getUnconfirmed());
+            assertEquals(0, result.getFailed());
+            assertTrue(result.getFailures().isEmpty());
+            assertEquals(Arrays.asList("a-1"), spilledValues(journal));
+
+            // 超时的发送最终失败时才暂存
+            producer.errorNext(new IllegalStateException("expired"));
+            assertEquals(Arrays.asList("a-1", "a-2"), spilledValues(journal));
+        }
+    }
+
+    private static List<String> spilledValues(SpillJournal journal) {
+        return journal.peek(10).stream().map(SpillRecord::getValue).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,68 @@
+package cn.yyzmain.kafka.retry;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPublisherTests {
+
+    private RetryPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        final RetryTopics retryTopics = new RetryTopics(null);
+        ReflectionTestUtils.setField(retryTopics, "mainTopic", "yyzmain");
+        ReflectionTestUtils.setField(retryTopics, "delaysMs", new long[]{1000, 10000});
+        publisher = new RetryPublisher(null, retryTopics, null);
+    }
+
+    @Test
+    void walksRetryTiersThenDeadLetters() {
+        final long start = System.currentTimeMillis();
+        final ProducerRecord<String, String> first = publisher.next(
+                new ConsumerRecord<>("yyzmain", 2, 42, "k", "a-1"), new IllegalStateException("boom"));
+        assertEquals("yyzmain.retry.1000", first.topic());
+        assertEquals("k", first.key());
+        assertEquals("1", header(first, RetryPublisher.HEADER_ATTEMPT));
+        assertEquals("2", header(first, RetryPublisher.HEADER_ORIGINAL_PARTITION));
+        assertEquals("42", header(first, RetryPublisher.HEADER_ORIGINAL_OFFSET));
+        assertTrue(header(first, RetryPublisher.HEADER_EXCEPTION).contains("boom"));
+        assertTrue(Long.parseLong(header(first, RetryPublisher.HEADER_DUE_AT)) >= start + 1000);
+
+        final ProducerRecord<String, String> second = publisher.next(consumed(first, 7), new IllegalStateException("again"));
+        assertEquals("yyzmain.retry.10000", second.topic());
+        assertEquals("2", header(second, RetryPublisher.HEADER_ATTEMPT));
+        assertEquals("42", header(second, RetryPublisher.HEADER_ORIGINAL_OFFSET));
+        // 上一级的x-头信息不重复携带
+        assertEquals(6, second.headers().toArray().length);
+
+        final ProducerRecord<String, String> dead = publisher.next(consumed(second, 3), new IllegalStateException("last"));
+        assertEquals("yyzmain.dlq", dead.topic());
+        assertEquals("yyzmain", header(dead, RetryPublisher.HEADER_ORIGINAL_TOPIC));
+        assertEquals("42", header(dead, RetryPublisher.HEADER_ORIGINAL_OFFSET));
+        assertTrue(header(dead, RetryPublisher.HEADER_EXCEPTION).contains("last"));
+        assertNull(dead.headers().lastHeader(RetryPublisher.HEADER_DUE_AT));
+    }
+
+    private static ConsumerRecord<String, String> consumed(ProducerRecord<String, String> sent, long offset) {
+        final ConsumerRecord<String, String> record = new ConsumerRecord<>(sent.topic(), 0, offset, sent.key(), sent.value());
+        for (Header header : sent.headers()) {
+            record.headers().add(header);
+        }
+        return record;
+    }
+
+    private static String header(ProducerRecord<String, String> record, String key) {
+        final Header header = record.headers().lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
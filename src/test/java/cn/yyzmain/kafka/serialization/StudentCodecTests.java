@@ -0,0 +1,41 @@
+package cn.yyzmain.kafka.serialization;
+
+import cn.yyzmain.h2.entity.Student;
+import com.google.gson.Gson;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StudentCodecTests {
+
+    @Test
+    void roundTrip() {
+        final Student student = new Student().setStudentId(123456).setStudentName("张三 Zhang 😀").setGender(1).setAge(18);
+        final byte[] bytes = new StudentSerializer().serialize("t", student);
+        assertEquals(student, new StudentDeserializer().deserialize("t", bytes));
+        assertTrue(bytes.length < new Gson().toJson(student).getBytes(StandardCharsets.UTF_8).length / 2);
+    }
+
+    @Test
+    void roundTripWithNullsAndNegatives() {
+        final Student student = new Student().setStudentId(-7).setAge(Integer.MIN_VALUE);
+        assertEquals(student, StudentCodec.decode(StudentCodec.encode(student)));
+        assertNull(StudentCodec.encode(null));
+        assertNull(StudentCodec.decode(null));
+    }
+
+    @Test
+    void rejectsUnknownVersionAndTruncatedPayload() {
+        assertThrows(SerializationException.class, () -> StudentCodec.decode(new byte[]{2, 0}));
+        final byte[] bytes = StudentCodec.encode(new Student().setStudentId(1).setStudentName("abcdef"));
+        final byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertThrows(SerializationException.class, () -> StudentCodec.decode(truncated));
+    }
+}
@@ -0,0 +1,161 @@
+package cn.yyzmain.kafka.sink;
+
+import cn.yyzmain.h2.entity.Student;
+import cn.yyzmain.h2.service.StudentBatchService;
+import cn.yyzmain.kafka.process.DuplicateFilter;
+import cn.yyzmain.kafka.process.FailedRecord;
+import cn.yyzmain.kafka.process.OffsetTracker;
+import cn.yyzmain.kafka.retry.RetryPublisher;
+import cn.yyzmain.kafka.serialization.StudentCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StudentSinkTests {
+
+    private static final TopicPartition TP = new TopicPartition("t", 0);
+
+    private final List<List<Student>> batches = new ArrayList<>();
+    private final List<FailedRecord> retried = new ArrayList<>();
+    private final OffsetTracker tracker = new OffsetTracker(new SimpleMeterRegistry());
+    private boolean publishFails;
+    private int badRowFailures = 1;
+
+    @Test
+    void flushesBySizeAndCompletesOffsetsAfterCommit() {
+        final StudentSink sink = sink(false);
+        final List<ConsumerRecord<String, String>> records = records(3);
+        tracker.register(records);
+
+        sink.handle(records.get(0));
+        sink.handle(records.get(1));
+        assertEquals(0, batches.size());
+        assertEquals(3, tracker.pendingCount(TP));
+
+        sink.handle(records.get(2));
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertEquals(0, tracker.pendingCount(TP));
+    }
+
+    @Test
+    void failedBatchFallsBackToRowsAndRetriesBadRow() {
+        final StudentSink sink = sink(true);
+        final List<ConsumerRecord<String, String>> records = records(2);
+        tracker.register(records);
+        records.forEach(sink::handle);
+        sink.flush();
+
+        assertEquals(1, retried.size());
+        assertEquals(1, retried.get(0).getRecord().offset());
+        // 坏数据在发布到重试主题后才完成，这里的替身不标记
+        assertEquals(1, tracker.pendingCount(TP));
+    }
+
+    @Test
+    void unwrittenRecordIsNotDroppedAsDuplicateOnRedelivery() {
+        final DuplicateFilter filter = new DuplicateFilter(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "expectedInsertions", 1000L);
+        ReflectionTestUtils.setField(filter, "fpp", 0.001);
+        ReflectionTestUtils.setField(filter, "windowMs", 600_000L);
+        ReflectionTestUtils.setField(filter, "maxMemoryBytes", 1L << 16);
+        filter.init();
+        tracker.addCompletionListener("t", filter::markProcessed);
+        publishFails = true;
+        final StudentSink sink = sink(true);
+
+        // 第一次投递：offset 1 写库失败且转入重试主题失败，保持未完成
+        consume(filter, sink, records(2));
+        assertEquals(1, tracker.pendingCount(TP));
+
+        // 回退后重新投递：已落库的offset 0 丢弃，offset 1 必须重新处理并落库
+        final List<ConsumerRecord<String, String>> fresh = consume(filter, sink, records(2));
+        assertEquals(1, fresh.size());
+        assertEquals(1, fresh.get(0).offset());
+        assertEquals(0, tracker.pendingCount(TP));
+    }
+
+    private List<ConsumerRecord<String, String>> consume(DuplicateFilter filter, StudentSink sink,
+                                                         List<ConsumerRecord<String, String>> records) {
+        final List<ConsumerRecord<String, String>> fresh = filter.filter(records);
+        tracker.register(fresh);
+        fresh.forEach(sink::handle);
+        sink.flush();
+        return fresh;
+    }
+
+    @Test
+    void rejectsRecordsWithoutStudentId() {
+        final StudentSink sink = sink(false);
+        assertThrows(IllegalArgumentException.class, () -> sink.handle(new ConsumerRecord<>("t", 0, 0, null, "{\"age\":1}")));
+        assertThrows(IllegalArgumentException.class, () -> sink.handle(new ConsumerRecord<>("t", 0, 0, null, "a-1")));
+    }
+
+    @Test
+    void rejectsBinaryStudentPayload() {
+        final StudentSink sink = sink(false);
+        final Student student = new Student();
+        student.setStudentId(1);
+        final String binary = new String(StudentCodec.encode(student), StandardCharsets.UTF_8);
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> sink.handle(new ConsumerRecord<>("t", 0, 0, "1", binary)));
+        assertTrue(e.getMessage().contains("binary"));
+    }
+
+    private StudentSink sink(boolean failBatch) {
+        final StudentBatchService service = new StudentBatchService(null, null, null) {
+            @Override
+            public int mergeBatch(List<Student> students) {
+                if (failBatch) {
+                    throw new IllegalStateException("batch failed");
+                }
+                batches.add(students);
+                return students.size();
+            }
+
+            @Override
+            public int merge(Student student) {
+                if (student.getStudentId() == 1 && badRowFailures-- > 0) {
+                    throw new IllegalStateException("bad row");
+                }
+                return 1;
+            }
+        };
+        final RetryPublisher publisher = new RetryPublisher(null, null, tracker) {
+            @Override
+            public List<ConsumerRecord<String, String>> publish(List<FailedRecord> failures) {
+                if (publishFails) {
+                    final List<ConsumerRecord<String, String>> unpublished = new ArrayList<>();
+                    failures.forEach(failure -> unpublished.add(failure.getRecord()));
+                    return unpublished;
+                }
+                retried.addAll(failures);
+                return Collections.emptyList();
+            }
+        };
+        final StudentSink sink = new StudentSink(service, tracker, publisher);
+        ReflectionTestUtils.setField(sink, "batchSize", 3);
+        return sink;
+    }
+
+    private static List<ConsumerRecord<String, String>> records(int count) {
+        final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new ConsumerRecord<>(TP.topic(), TP.partition(), i, null,
+                    "{\"studentId\":" + i + ",\"studentName\":\"s" + i + "\",\"gender\":1,\"age\":18}"));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,94 @@
+package cn.yyzmain.kafka.spill;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillJournalTests {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void appendPeekCommitAcrossSegments() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir, 128, 1 << 20)) {
+            journal.open();
+            for (int i = 0; i < 20; i++) {
+                assertTrue(journal.append("topic", i % 2 == 0 ? null : "k" + i, "a-" + i));
+            }
+            final List<SpillRecord> first = journal.peek(5);
+            assertEquals(5, first.size());
+            assertEquals("a-0", first.get(0).getValue());
+            assertNull(first.get(0).getKey());
+            assertEquals("k1", first.get(1).getKey());
+            first.forEach(journal::commit);
+
+            final List<SpillRecord> rest = journal.peek(100);
+            assertEquals(15, rest.size());
+            assertEquals("a-5", rest.get(0).getValue());
+            rest.forEach(journal::commit);
+            assertTrue(journal.isEmpty());
+            assertEquals(1, dir.listFiles((d, name) -> name.endsWith(".spill")).length);
+        }
+    }
+
+    @Test
+    void reopenResumesFromCheckpoint() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir, 256, 1 << 20)) {
+            journal.open();
+            for (int i = 0; i < 10; i++) {
+                journal.append("topic", null, "b-" + i);
+            }
+            journal.peek(4).forEach(journal::commit);
+        }
+        try (SpillJournal journal = new SpillJournal(dir, 256, 1 << 20)) {
+            journal.open();
+            journal.append("topic", null, "b-10");
+            final List<SpillRecord> records = journal.peek(100);
+            assertEquals(7, records.size());
+            assertEquals("b-4", records.get(0).getValue());
+            assertEquals("b-10", records.get(6).getValue());
+        }
+    }
+
+    @Test
+    void corruptedRecordIsSkipped() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir, 4096, 1 << 20)) {
+            journal.open();
+            journal.append("topic", null, "c-0");
+            journal.append("topic", null, "c-1");
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, String.format("%020d.spill", 0)), "rw")) {
+            // 破坏第二条记录的body
+            file.seek(8 + 2 + 5 + 4 + 4 + 3 + 8 + 4);
+            file.write('x');
+        }
+        try (SpillJournal journal = new SpillJournal(dir, 4096, 1 << 20)) {
+            journal.open();
+            final List<SpillRecord> records = journal.peek(100);
+            assertEquals(1, records.size());
+            assertEquals("c-0", records.get(0).getValue());
+        }
+    }
+
+    @Test
+    void rejectsWhenFull() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir, 64, 128)) {
+            journal.open();
+            int accepted = 0;
+            while (journal.append("topic", null, "0123456789") && accepted < 100) {
+                accepted++;
+            }
+            assertTrue(accepted > 0);
+            assertFalse(journal.append("topic", null, "0123456789"));
+        }
+    }
+}